@@ -0,0 +1,112 @@
+package com.snakegame;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that a game tick allocates nothing once the JVM is warmed up.
+ * It plays the default game, a game with several foods of mixed types, and one with several foods
+ * for every pairing of a food type and a built-in behavior, so every food update path is covered.
+ * Games are played by the greedy strategy; every tick is measured on its own with the
+ * thread's allocated-bytes counter, and the check exits with status 1 if any measured tick
+ * allocated. Starting a new game is not part of a tick and is not measured.
+ *
+ * Run from the project root with gradle allocationCheck, which gradle check also runs, or without the build:
+ *   javac -d out src/com/snakegame/*.java bench/com/snakegame/*.java
+ *   java -cp out com.snakegame.AllocationCheck [ticks per setting]
+ */
+public class AllocationCheck {
+    private static final int WARMUP_TICKS = 100_000;
+    private static final int NUM_FOODS = 16;
+    private static final FoodBehavior[] BEHAVIORS = {
+            FoodBehavior.STATIC, FoodBehavior.RANDOM_WALK, FoodBehavior.FLEE, FoodBehavior.CHASE
+    };
+    private static final String[] BEHAVIOR_NAMES = {"STATIC", "RANDOM_WALK", "FLEE", "CHASE"};
+    private static final long BUDGET_BYTES = 0;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Runs the check.
+     *
+     * @param args the number of ticks to measure in each game setting.
+     */
+    public static void main(String[] args) {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        List<String> names = new ArrayList<>();
+        List<GameEngine> engines = new ArrayList<>();
+        names.add("default");
+        engines.add(new GameEngine(1));
+        names.add("foods=" + NUM_FOODS + " mixed");
+        engines.add(new GameEngine(1, new GameConfig().setNumFoods(NUM_FOODS)));
+        for (FoodType type : FoodType.values()) {
+            for (int b = 0; b < BEHAVIORS.length; b++) {
+                GameConfig config = new GameConfig().setNumFoods(NUM_FOODS).setFoodType(type)
+                        .setBehavior(type, BEHAVIORS[b]);
+                names.add("foods=" + NUM_FOODS + " " + type + " " + BEHAVIOR_NAMES[b]);
+                engines.add(new GameEngine(1, config));
+            }
+        }
+        Strategy strategy = new GreedyStrategy();
+        for (GameEngine engine : engines) {
+            engine.reset();
+        }
+
+        // Every setting is warmed up before any is measured, so no path is compiled or deoptimized meanwhile
+        for (GameEngine engine : engines) {
+            measure(engine, strategy, WARMUP_TICKS);
+        }
+        long failures = 0;
+        long worst = 0;
+        for (int i = 0; i < engines.size(); i++) {
+            long[] result = measure(engines.get(i), strategy, ticks);
+            System.out.printf("%-28s over budget: %d, worst: %d bytes%n", names.get(i), result[0], result[1]);
+            failures += result[0];
+            worst = Math.max(worst, result[1]);
+        }
+
+        System.out.printf("ticks: %d, over budget: %d, worst: %d bytes%n", (long) ticks * engines.size(), failures, worst);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Plays the given number of ticks, measuring each of them. A game that ends is started again.
+     *
+     * @param engine   the game to play.
+     * @param strategy the strategy choosing the turns.
+     * @param ticks    the number of ticks to play.
+     * @return the number of ticks over budget and the most bytes allocated by one tick.
+     */
+    private static long[] measure(GameEngine engine, Strategy strategy, int ticks) {
+        long threadId = Thread.currentThread().getId();
+
+        // Calibrate the cost of reading the counter itself
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long before = THREADS.getThreadAllocatedBytes(threadId);
+            overhead = Math.min(overhead, THREADS.getThreadAllocatedBytes(threadId) - before);
+        }
+
+        long failures = 0;
+        long worst = 0;
+        for (int i = 0; i < ticks; i++) {
+            if (engine.getStatus() == GameStatus.GAME_OVER) {
+                engine.reset();
+            }
+
+            long before = THREADS.getThreadAllocatedBytes(threadId);
+            engine.step(strategy.decide(engine));
+            long allocated = THREADS.getThreadAllocatedBytes(threadId) - before - overhead;
+            if (allocated > BUDGET_BYTES) {
+                failures++;
+                worst = Math.max(worst, allocated);
+            }
+        }
+        return new long[] {failures, worst};
+    }
+}
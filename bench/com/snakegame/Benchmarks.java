@@ -0,0 +1,619 @@
+package com.snakegame;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.function.IntSupplier;
+
+/**
+ * Micro-benchmarks for the hot paths of the game: moving the snake, collision checks,
+ * the food behaviors, food queries, generating a level, encoding the game state, the autopilot's decisions,
+ * stepping games in lockstep and rendering a frame.
+ * Every benchmark is warmed up, then run in timed batches; the report shows the average
+ * time per operation and the bytes allocated per operation, measured on the benchmark thread.
+ * It is a quick check that needs nothing but the JDK; the JMH benchmarks in jmh, run with gradle jmh,
+ * cover moving, collisions, the food updates and rendering with forks and the GC profiler.
+ *
+ * Run from the project root with gradle bench [-Pinclude=filter], or without the build:
+ *   javac -d out src/com/snakegame/*.java bench/com/snakegame/*.java
+ *   java -cp out com.snakegame.Benchmarks [filter]
+ */
+public class Benchmarks {
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+    private static final long MEASURE_NANOS = 2_000_000_000L;
+    private static final int BATCH = 10_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static int sink;
+
+    /**
+     * Runs the benchmarks whose names contain the filter, or all of them.
+     *
+     * @param args an optional name filter.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        String filter = args.length > 0 ? args[0] : "";
+
+        System.out.printf("%-36s %14s %14s%n", "benchmark", "ns/op", "B/op");
+
+        for (int length : new int[] {4, 256, 2304}) {
+            run(filter, "snake.move length=" + length, snakeMove(length));
+        }
+        for (int rocks : new int[] {15, 150, 1500}) {
+            run(filter, "rock.collidesWith rocks=" + rocks, rockCollidesWith(rocks));
+            run(filter, "engine.checkForGameOver rocks=" + rocks, checkForGameOver(rocks));
+        }
+        for (FoodType type : FoodType.values()) {
+            for (int foods : new int[] {1, 100, 10_000}) {
+                run(filter, "engine.updateFoods " + type + " foods=" + foods, updateFoods(type, foods));
+            }
+        }
+        for (int foods : new int[] {100, 10_000}) {
+            for (boolean indexed : new boolean[] {false, true}) {
+                String how = indexed ? " index" : " scan";
+                run(filter, "food.at foods=" + foods + how, foodAt(foods, indexed));
+                run(filter, "food.within r=30 foods=" + foods + how, foodWithin(foods, 30, indexed));
+                run(filter, "food.nearest foods=" + foods + how, foodNearest(foods, indexed));
+            }
+        }
+        for (int cells : new int[] {48, 1000, 4000}) {
+            run(filter, "level.generate cells=" + cells + "x" + cells, generateLevel(cells), 1);
+        }
+        for (int length : new int[] {4, 256, 2304}) {
+            run(filter, "engine.step length=" + length, stepCircling(length));
+            run(filter, "engine.step length=" + length + " metrics", stepMeasured(length));
+            run(filter, "state.encode length=" + length, encodeState(length));
+            run(filter, "state.decode length=" + length, decodeState(length));
+            report(filter, "state.bytes length=" + length, stateBytes(length));
+            run(filter, "snapshot.capture length=" + length, captureSnapshot(length));
+            run(filter, "snapshot.restore length=" + length, restoreSnapshot(length, 0));
+            run(filter, "snapshot.rollback length=" + length + " ticks=4", restoreSnapshot(length, 4));
+        }
+        for (int cells : new int[] {48, 1000}) {
+            GameConfig config = autopilotConfig(cells);
+            run(filter, "autopilot.decide map=" + cells, autopilot(config, new Autopilot()), 1000);
+            report(filter, "autopilot.rate map=" + cells, autopilotRate(config));
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int envs : new int[] {1, 256}) {
+            run(filter, "env.step envs=" + envs, vectorStep(envs, 1), Math.max(1, BATCH / envs));
+        }
+        report(filter, "env.rate envs=1024 threads=" + cores, vectorRate(1024, cores));
+        run(filter, "game.render", render(false, new GameConfig()));
+        run(filter, "game.render dirty cell", render(true, new GameConfig()));
+        run(filter, "game.render active", renderActive(new GameConfig()));
+        for (int cells : new int[] {1000, 100_000}) {
+            // Classic rock density, capped so the rock list fits in a default heap
+            int rocks = (int) Math.min(15L * cells * cells / (48 * 48), 1_000_000);
+            GameConfig config = new GameConfig().setSize(cells * 10, cells * 10).setNumRocks(rocks);
+            run(filter, "game.render map=" + cells, render(false, config));
+        }
+    }
+
+    /**
+     * Moves a snake of the given length around the edge of a square.
+     */
+    private static IntSupplier snakeMove(int length) {
+        int side = 600;
+        Occupancy occupancy = new Occupancy(0, 0, side * 10, side * 10);
+        Snake snake = new Snake(0, 0, occupancy);
+        for (int i = 4; i < length; i++) {
+            snake.addTail();
+        }
+
+        Direction[] clockwise = {Direction.DOWN, Direction.LEFT, Direction.UP, Direction.RIGHT};
+        int[] steps = {0, 0};
+        IntSupplier move = () -> {
+            snake.move();
+            if (++steps[0] == side - 1) {
+                steps[0] = 0;
+                snake.turn(clockwise[steps[1]++ & 3]);
+            }
+            return snake.getHeadX();
+        };
+        for (int i = 0; i < length; i++) {
+            move.getAsInt();
+        }
+        return move;
+    }
+
+    /**
+     * Checks a sequence of cells against the given number of rocks.
+     */
+    private static IntSupplier rockCollidesWith(int numRocks) {
+        GameRandom random = new GameRandom(1);
+        Occupancy occupancy = new Occupancy(GameEngine.BORDER, GameEngine.BORDER, GameEngine.WIDTH, GameEngine.HEIGHT);
+        Rock rock = new Rock(numRocks, GameEngine.WIDTH, GameEngine.HEIGHT, GameEngine.BORDER, occupancy, random);
+        int[] xs = new int[1024];
+        int[] ys = new int[1024];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = GameEngine.BORDER + random.nextInt(GameEngine.WIDTH / 10) * 10;
+            ys[i] = GameEngine.BORDER + random.nextInt(GameEngine.HEIGHT / 10) * 10;
+        }
+
+        int[] i = {0};
+        return () -> {
+            int k = i[0]++ & 1023;
+            return rock.collidesWith(xs[k], ys[k]) ? 1 : 0;
+        };
+    }
+
+    /**
+     * Checks a running game with the given number of rocks for the end of the game.
+     */
+    private static IntSupplier checkForGameOver(int numRocks) {
+        GameEngine engine = new GameEngine(1, new GameConfig().setNumRocks(numRocks));
+        engine.reset();
+        return () -> {
+            engine.checkForGameOver();
+            return engine.getPoints();
+        };
+    }
+
+    /**
+     * Updates the given number of foods, all of the given type. The snake is driven into the wall first,
+     * so the foods can never be eaten.
+     */
+    private static IntSupplier updateFoods(FoodType type, int numFoods) {
+        GameConfig config = new GameConfig().setNumFoods(numFoods).setFoodType(type);
+        GameEngine engine = null;
+        for (long seed = 1; engine == null || engine.getDeathCause() != DeathCause.WALL; seed++) {
+            engine = new GameEngine(seed, config);
+            engine.reset();
+            while (engine.step(null) == GameStatus.RUNNING) {
+                // Keep going straight until the snake dies
+            }
+        }
+
+        GameEngine game = engine;
+        return () -> {
+            game.updateFoods();
+            return game.getFoods().getX(0);
+        };
+    }
+
+    /**
+     * Creates the given number of foods on a standard playing field.
+     */
+    private static Food createFoods(int numFoods) {
+        Occupancy occupancy = new Occupancy(GameEngine.BORDER, GameEngine.BORDER, GameEngine.WIDTH, GameEngine.HEIGHT);
+        Food foods = new Food(numFoods, occupancy, new GameRandom(1), null);
+        for (int i = 0; i < numFoods; i++) {
+            foods.add();
+        }
+        return foods;
+    }
+
+    /**
+     * Creates random cell positions on a standard playing field, x and y interleaved.
+     */
+    private static int[] createQueries() {
+        GameRandom random = new GameRandom(2);
+        int[] queries = new int[2048];
+        for (int i = 0; i < queries.length; i += 2) {
+            queries[i] = GameEngine.BORDER + random.nextInt(GameEngine.WIDTH / 10) * 10;
+            queries[i + 1] = GameEngine.BORDER + random.nextInt(GameEngine.HEIGHT / 10) * 10;
+        }
+        return queries;
+    }
+
+    /**
+     * Finds the foods on a random cell, with the spatial index or by checking every food.
+     */
+    private static IntSupplier foodAt(int numFoods, boolean indexed) {
+        Food foods = createFoods(numFoods);
+        FoodIndex index = foods.getIndex();
+        int[] queries = createQueries();
+        int[] out = new int[numFoods];
+        int[] q = {0};
+        return () -> {
+            int k = q[0]++ & 1023;
+            int px = queries[2 * k];
+            int py = queries[2 * k + 1];
+            if (indexed) {
+                return index.at(px, py, out);
+            }
+            int found = 0;
+            for (int i = 0, size = foods.size(); i < size; i++) {
+                if (foods.getX(i) == px && foods.getY(i) == py) {
+                    out[found++] = i;
+                }
+            }
+            return found;
+        };
+    }
+
+    /**
+     * Finds the foods within a radius of a random cell, with the spatial index or by checking every food.
+     */
+    private static IntSupplier foodWithin(int numFoods, int radius, boolean indexed) {
+        Food foods = createFoods(numFoods);
+        FoodIndex index = foods.getIndex();
+        int[] queries = createQueries();
+        int[] out = new int[numFoods];
+        int[] q = {0};
+        return () -> {
+            int k = q[0]++ & 1023;
+            int px = queries[2 * k];
+            int py = queries[2 * k + 1];
+            if (indexed) {
+                return index.within(px, py, radius, out);
+            }
+            int found = 0;
+            for (int i = 0, size = foods.size(); i < size; i++) {
+                int dx = foods.getX(i) - px;
+                int dy = foods.getY(i) - py;
+                if (dx * dx + dy * dy <= radius * radius) {
+                    out[found++] = i;
+                }
+            }
+            return found;
+        };
+    }
+
+    /**
+     * Finds the food closest to a random cell, with the spatial index or by checking every food.
+     */
+    private static IntSupplier foodNearest(int numFoods, boolean indexed) {
+        Food foods = createFoods(numFoods);
+        FoodIndex index = foods.getIndex();
+        int[] queries = createQueries();
+        int[] q = {0};
+        return () -> {
+            int k = q[0]++ & 1023;
+            int px = queries[2 * k];
+            int py = queries[2 * k + 1];
+            if (indexed) {
+                return index.nearest(px, py);
+            }
+            int best = -1;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int i = 0, size = foods.size(); i < size; i++) {
+                int distance = Math.abs(foods.getX(i) - px) + Math.abs(foods.getY(i) - py);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = i;
+                }
+            }
+            return best;
+        };
+    }
+
+    /**
+     * Renders a running game with the given settings into an offscreen image, either the whole panel
+     * or only the cell around the head, as after a tick.
+     */
+    private static IntSupplier render(boolean dirtyCell, GameConfig config) {
+        GameEngine engine = new GameEngine(1, config);
+        engine.reset();
+        for (int i = 0; i < 10; i++) {
+            engine.step(null);
+        }
+
+        Game game = new Game(engine);
+        game.setSize(540, 580);
+        BufferedImage image = new BufferedImage(540, 580, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        if (dirtyCell) {
+            Snake snake = engine.getSnake();
+            g2d.setClip(snake.getHeadX(), snake.getHeadY(), 10, 10);
+        }
+        return () -> {
+            game.paintComponent(g2d);
+            return image.getRGB(0, 0);
+        };
+    }
+
+    /**
+     * Draws a running game with the given settings into an offscreen image the way an ActiveView does every frame.
+     */
+    private static IntSupplier renderActive(GameConfig config) {
+        GameEngine engine = new GameEngine(1, config);
+        engine.reset();
+        for (int i = 0; i < 10; i++) {
+            engine.step(null);
+        }
+
+        Game game = new Game(engine);
+        BufferedImage image = new BufferedImage(540, 580, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        return () -> {
+            game.paintActive(g2d, 540, 580, null);
+            return image.getRGB(0, 0);
+        };
+    }
+
+    /**
+     * Generates a level with the given number of cells per side and a tenth of them rock,
+     * with a new seed every time so nothing comes from the cache.
+     */
+    private static IntSupplier generateLevel(int cells) {
+        LevelGenerator generator = new LevelGenerator(0);
+        long[] seed = {0};
+        return () -> generator.generate(seed[0]++, 0.1, cells, cells, cells / 2, cells / 2).getRockCount();
+    }
+
+    /**
+     * Creates a game whose snake has the given length and circles a square too large to bite itself,
+     * among 16 foods of random types.
+     */
+    private static GameEngine circlingGame(int length) {
+        int side = length / 2 + 16;
+        GameConfig config = new GameConfig().setSize((2 * side + 8) * 10, (2 * side + 8) * 10)
+                .setNumRocks(0).setNumFoods(16);
+        GameEngine engine = new GameEngine(1, config);
+        engine.reset();
+        for (int i = 4; i < length; i++) {
+            engine.getSnake().addTail();
+        }
+        return engine;
+    }
+
+    /**
+     * Steps a circling game once per call, turning clockwise at the corners of its square.
+     */
+    private static IntSupplier circle(GameEngine engine, int length) {
+        int side = length / 2 + 16;
+        Direction[] clockwise = {Direction.DOWN, Direction.LEFT, Direction.UP, Direction.RIGHT};
+        int[] steps = {0, 0};
+        IntSupplier step = () -> {
+            Direction turn = null;
+            if (++steps[0] == side - 1) {
+                steps[0] = 0;
+                turn = clockwise[steps[1]++ & 3];
+            }
+            engine.step(turn);
+            return engine.getTicks();
+        };
+        // Move once around the length of the snake, so no segment is left where it was added
+        for (int i = 0; i < length; i++) {
+            step.getAsInt();
+        }
+        return step;
+    }
+
+    /**
+     * Steps a game with a snake of the given length, as the baseline of encodeState.
+     */
+    private static IntSupplier stepCircling(int length) {
+        return circle(circlingGame(length), length);
+    }
+
+    /**
+     * Steps a game with a snake of the given length that measures its phases.
+     * Subtract engine.step for the cost of the metrics alone.
+     */
+    private static IntSupplier stepMeasured(int length) {
+        GameEngine engine = circlingGame(length);
+        engine.setMetrics(new GameMetrics(null));
+        return circle(engine, length);
+    }
+
+    /**
+     * Steps a game with a snake of the given length and encodes every tick, with a keyframe every 100 ticks.
+     * Subtract engine.step for the cost of the encoding alone.
+     */
+    private static IntSupplier encodeState(int length) {
+        GameEngine engine = circlingGame(length);
+        IntSupplier step = circle(engine, length);
+        StateEncoder encoder = new StateEncoder(engine, 100);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        return () -> {
+            step.getAsInt();
+            buffer.clear();
+            encoder.encode(buffer);
+            return buffer.position();
+        };
+    }
+
+    /**
+     * Records 10,000 ticks of a game with a snake of the given length, with a keyframe every 100 ticks.
+     */
+    private static ByteBuffer recordState(int length) {
+        GameEngine engine = circlingGame(length);
+        IntSupplier step = circle(engine, length);
+        StateEncoder encoder = new StateEncoder(engine, 100);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 22);
+        for (int i = 0; i < 10_000; i++) {
+            step.getAsInt();
+            encoder.encode(buffer);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Decodes a recorded game frame by frame, starting over at the end.
+     */
+    private static IntSupplier decodeState(int length) {
+        ByteBuffer buffer = recordState(length);
+        StateDecoder decoder = new StateDecoder();
+        return () -> {
+            if (!buffer.hasRemaining()) {
+                buffer.rewind();
+            }
+            decoder.decode(buffer);
+            return decoder.getTicks();
+        };
+    }
+
+    /**
+     * Sums up the frame sizes of a recorded game.
+     */
+    private static String stateBytes(int length) {
+        ByteBuffer buffer = recordState(length);
+        StateDecoder decoder = new StateDecoder();
+        long[] bytes = new long[3];
+        int[] frames = new int[3];
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            byte kind = decoder.decode(buffer);
+            bytes[kind] += buffer.position() - start;
+            frames[kind]++;
+        }
+        return String.format("keyframe %.0f B, delta %.2f B, mean %.2f B/tick",
+                (double) bytes[StateCodec.KEYFRAME] / frames[StateCodec.KEYFRAME],
+                (double) bytes[StateCodec.DELTA] / frames[StateCodec.DELTA],
+                (double) buffer.limit() / (frames[StateCodec.KEYFRAME] + frames[StateCodec.DELTA]));
+    }
+
+    /**
+     * Captures the state of a game with a snake of the given length.
+     */
+    private static IntSupplier captureSnapshot(int length) {
+        GameEngine engine = circlingGame(length);
+        circle(engine, length);
+        GameSnapshot snapshot = new GameSnapshot();
+        return () -> {
+            snapshot.capture(engine);
+            return snapshot.getTicks();
+        };
+    }
+
+    /**
+     * Steps a game with a snake of the given length the given number of ticks and restores it to where it was,
+     * as a search looking ahead or a rollback would. Subtract engine.step for the cost of the restore alone.
+     */
+    private static IntSupplier restoreSnapshot(int length, int ticks) {
+        GameEngine engine = circlingGame(length);
+        IntSupplier step = circle(engine, length);
+        GameSnapshot snapshot = new GameSnapshot();
+        snapshot.capture(engine);
+        return () -> {
+            for (int i = 0; i < ticks; i++) {
+                step.getAsInt();
+            }
+            snapshot.restore(engine);
+            return engine.getTicks();
+        };
+    }
+
+    /**
+     * Returns the settings of a square map with the given number of cells a side, the classic one
+     * at 48, and on larger maps scattered rocks and a food for every 10,000 cells.
+     */
+    private static GameConfig autopilotConfig(int cells) {
+        if (cells == 48) {
+            return new GameConfig();
+        }
+        return new GameConfig().setSize(cells * 10, cells * 10).setRockDensity(0.05)
+                .setNumFoods(cells * cells / 10_000);
+    }
+
+    /**
+     * Lets an autopilot decide and steps the game once per call, starting a new game when one ends.
+     */
+    private static IntSupplier autopilot(GameConfig config, Autopilot pilot) {
+        GameEngine engine = new GameEngine(1, config);
+        engine.reset();
+        return () -> {
+            if (engine.step(pilot.decide(engine)) != GameStatus.RUNNING) {
+                engine.reset();
+            }
+            return engine.getTicks();
+        };
+    }
+
+    /**
+     * Plays a game with an autopilot for the measuring time and sums up how much it searched.
+     */
+    private static String autopilotRate(GameConfig config) {
+        Autopilot pilot = new Autopilot();
+        IntSupplier op = autopilot(config, pilot);
+        measure(op, WARMUP_NANOS, 1000);
+        long decisions = pilot.getDecisions();
+        long nodes = pilot.getNodesExpanded();
+        long start = System.nanoTime();
+        measure(op, MEASURE_NANOS, 1000);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        decisions = pilot.getDecisions() - decisions;
+        nodes = pilot.getNodesExpanded() - nodes;
+        return String.format("%.0f decisions/s, %.0f nodes/s, %.0f nodes/decision",
+                decisions / seconds, nodes / seconds, (double) nodes / decisions);
+    }
+
+    /**
+     * Steps a vector of games with random turns once per call.
+     */
+    private static IntSupplier vectorStep(int envs, int threads) {
+        VectorEnv env = new VectorEnv(envs, new GameConfig(), 1, threads);
+        int[] actions = new int[envs];
+        GameRandom random = new GameRandom(1);
+        return () -> {
+            for (int i = 0; i < envs; i++) {
+                actions[i] = random.nextDouble() < 0.1 ? (int) (random.nextDouble() * 4) : VectorEnv.STRAIGHT;
+            }
+            env.step(actions);
+            return env.getDones()[0] ? 1 : 0;
+        };
+    }
+
+    /**
+     * Steps a vector of games on the given number of threads for the measuring time.
+     */
+    private static String vectorRate(int envs, int threads) {
+        IntSupplier op = vectorStep(envs, threads);
+        measure(op, WARMUP_NANOS, 1);
+        long start = System.nanoTime();
+        long steps = measure(op, MEASURE_NANOS, 1);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return String.format("%.0f game steps/s", steps * envs / seconds);
+    }
+
+    /**
+     * Prints a result that is not a timing if its name matches the filter.
+     */
+    private static void report(String filter, String name, String result) {
+        if (name.contains(filter)) {
+            System.out.printf("%-36s %s%n", name, result);
+        }
+    }
+
+    /**
+     * Warms up and measures a benchmark if its name matches the filter.
+     */
+    private static void run(String filter, String name, IntSupplier op) {
+        run(filter, name, op, BATCH);
+    }
+
+    /**
+     * Warms up and measures a benchmark if its name matches the filter, timing the given number of operations at once.
+     */
+    private static void run(String filter, String name, IntSupplier op, int batch) {
+        if (!name.contains(filter)) {
+            return;
+        }
+
+        measure(op, WARMUP_NANOS, batch);
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long ops = measure(op, MEASURE_NANOS, batch);
+        long elapsed = System.nanoTime() - start;
+        long bytes = THREADS.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+        System.out.printf("%-36s %14.2f %14.3f%n", name, (double) elapsed / ops, (double) bytes / ops);
+    }
+
+    /**
+     * Runs the operation in batches for at least the given time.
+     *
+     * @return the number of operations run.
+     */
+    private static long measure(IntSupplier op, long nanos, int batch) {
+        long ops = 0;
+        long end = System.nanoTime() + nanos;
+        int acc = 0;
+        do {
+            for (int i = 0; i < batch; i++) {
+                acc += op.getAsInt();
+            }
+            ops += batch;
+        } while (System.nanoTime() < end);
+        sink += acc;
+        return ops;
+    }
+}
@@ -0,0 +1,385 @@
+package com.snakegame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Checks that the ways a game is written down give the same game back.
+ * Seeded games are played by the greedy strategy with random turns and resets, recorded as replays,
+ * and read back: stepping through a replay, and seeking to random ticks in it, must reproduce the state
+ * of the recorded game at every tick. The same kind of games are encoded frame by frame as keyframes and deltas,
+ * with ticks skipped and held now and then, and every decoded frame must describe the game as it is.
+ * Finally snapshots are captured, the game played on a few ticks, with and without eating, and the snapshot
+ * restored: the game must be back where it was, with as many free cells, and play on exactly like a new game
+ * restored from the written snapshot, which always takes the full copy instead of undoing the moves.
+ * The check exits with status 1 if any state differs.
+ *
+ * Run from the project root with gradle roundTripCheck, which gradle check also runs, or without the build:
+ *   javac -d out src/com/snakegame/*.java bench/com/snakegame/*.java
+ *   java -cp out com.snakegame.RoundTripCheck [ticks per game]
+ */
+public class RoundTripCheck {
+    private static final int KEYFRAME_INTERVAL = 1000;
+    private static final int SEEKS = 2000;
+    private static final double TURN_CHANCE = 0.05;
+    private static final double RESET_CHANCE = 0.3;
+    private static final double SKIP_CHANCE = 0.01;
+    private static final double HOLD_CHANCE = 0.01;
+    private static final int CODEC_KEYFRAME_INTERVAL = 100;
+    private static final int SNAPSHOTS = 2000;
+    private static final int MAX_LEAD_TICKS = 50;
+    private static final int MAX_ROLLBACK_TICKS = 20;
+    private static final int LOCKSTEP_TICKS = 20;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private static long mismatches;
+    private static long undone;
+    private static long eaten;
+
+    /**
+     * Runs the check.
+     *
+     * @param args the number of ticks to play in each game.
+     * @throws IOException if a replay cannot be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        GameConfig[] configs = createConfigs();
+        Path dir = Files.createTempDirectory("snake-round-trip");
+        try {
+            for (int c = 0; c < configs.length; c++) {
+                checkReplay(dir.resolve("game-" + c + ".replay"), 42 + c, configs[c], ticks);
+                checkStateCodec(42 + c, configs[c], ticks);
+                checkSnapshots(42 + c, configs[c]);
+            }
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+
+        System.out.printf("games: %d, ticks: %d, snapshots: %d (%d undone, %d after eating), mismatches: %d%n",
+                configs.length, ticks, configs.length * SNAPSHOTS, undone, eaten, mismatches);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns the settings the games are played with: the default game, one with many foods
+     * that move, and one that adds a generated level of rocks.
+     *
+     * @return the settings.
+     */
+    private static GameConfig[] createConfigs() {
+        GameConfig moving = new GameConfig().setNumFoods(12)
+                .setBehavior(FoodType.RED, FoodBehavior.RANDOM_WALK)
+                .setBehavior(FoodType.YELLOW, FoodBehavior.FLEE)
+                .setBehavior(FoodType.MAGENTA, FoodBehavior.CHASE);
+        GameConfig level = new GameConfig().setNumFoods(12).setRockDensity(0.1)
+                .setBehavior(FoodType.RED, FoodBehavior.RANDOM_WALK);
+        return new GameConfig[] {new GameConfig(), moving, level};
+    }
+
+    /**
+     * Records a game as a replay, then steps through the replay and seeks in it,
+     * comparing the state of the game read back with the recorded one.
+     *
+     * @param path   the file to record to.
+     * @param seed   the seed of the game.
+     * @param config the settings of the game.
+     * @param ticks  the number of ticks to play.
+     * @throws IOException if the replay cannot be written or read.
+     */
+    private static void checkReplay(Path path, long seed, GameConfig config, int ticks) throws IOException {
+        GameEngine engine = new GameEngine(seed, config);
+        Strategy strategy = new GreedyStrategy();
+        GameRandom random = new GameRandom(seed);
+        long[] expected = new long[ticks + 1];
+
+        try (ReplayRecorder recorder = new ReplayRecorder(path, engine, KEYFRAME_INTERVAL)) {
+            expected[0] = fingerprint(engine);
+            for (int t = 0; t < ticks; t++) {
+                boolean reset = engine.getStatus() == GameStatus.GAME_OVER && random.nextDouble() < RESET_CHANCE;
+                boolean start = !reset && engine.getStatus() == GameStatus.NOT_STARTED;
+                Direction input = reset ? null : chooseInput(engine, strategy, random);
+                recorder.record(engine, reset, start, input);
+                if (reset) {
+                    engine.reset();
+                } else if (start) {
+                    engine.setStatus(GameStatus.RUNNING);
+                }
+                engine.step(input);
+                expected[t + 1] = fingerprint(engine);
+            }
+        }
+
+        try (ReplayReader reader = new ReplayReader(path)) {
+            if (reader.getTickCount() != ticks) {
+                fail("replay " + seed + " has " + reader.getTickCount() + " ticks, recorded " + ticks);
+                return;
+            }
+            compare("replay " + seed + " tick 0", fingerprint(reader.getEngine()), expected[0]);
+            for (int t = 1; t <= ticks; t++) {
+                reader.step();
+                compare("replay " + seed + " step to tick " + t, fingerprint(reader.getEngine()), expected[t]);
+            }
+            for (int k = 0; k < SEEKS; k++) {
+                int target = (int) (random.nextDouble() * (ticks + 1));
+                reader.seek(target);
+                compare("replay " + seed + " seek to tick " + target, fingerprint(reader.getEngine()), expected[target]);
+                if (target < ticks) {
+                    reader.step();
+                    compare("replay " + seed + " step after seek to tick " + target,
+                            fingerprint(reader.getEngine()), expected[target + 1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes a game every tick and decodes every frame, comparing the decoded state with the game.
+     * Now and then a tick is played without being encoded, which the encoder must notice and answer with
+     * a keyframe, or a frame is encoded again without a tick, as for a paused game.
+     *
+     * @param seed   the seed of the game.
+     * @param config the settings of the game.
+     * @param ticks  the number of ticks to play.
+     */
+    private static void checkStateCodec(long seed, GameConfig config, int ticks) {
+        GameEngine engine = new GameEngine(seed, config);
+        engine.reset();
+        Strategy strategy = new GreedyStrategy();
+        GameRandom random = new GameRandom(seed);
+        StateEncoder encoder = new StateEncoder(engine, CODEC_KEYFRAME_INTERVAL);
+        StateDecoder decoder = new StateDecoder();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+
+        for (int t = 0; t < ticks; t++) {
+            if (engine.getStatus() == GameStatus.GAME_OVER) {
+                if (random.nextDouble() < RESET_CHANCE) {
+                    engine.reset();
+                }
+            } else if (random.nextDouble() >= HOLD_CHANCE) {
+                engine.step(chooseInput(engine, strategy, random));
+                if (random.nextDouble() < SKIP_CHANCE) {
+                    continue;
+                }
+            }
+
+            buffer.clear();
+            byte kind = encoder.encode(buffer);
+            buffer.flip();
+            if (decoder.decode(buffer) != kind || buffer.hasRemaining()) {
+                fail("codec " + seed + " tick " + engine.getTicks() + " decoded a different frame than encoded");
+                return;
+            }
+            String difference = difference(decoder, engine, kind == StateCodec.KEYFRAME);
+            if (difference != null) {
+                fail("codec " + seed + " tick " + engine.getTicks() + " " + difference + " differs");
+                // The decoder stays out of step until the next keyframe
+                encoder.requestKeyframe();
+            }
+        }
+    }
+
+    /**
+     * Compares a decoded frame with the game it was encoded from.
+     *
+     * @param decoder  the decoder that read the frame.
+     * @param engine   the game.
+     * @param keyframe whether the frame was a keyframe, the only kind that carries the map and the rocks.
+     * @return the name of the first part that differs, or null if none does.
+     */
+    private static String difference(StateDecoder decoder, GameEngine engine, boolean keyframe) {
+        if (decoder.getTicks() != engine.getTicks()) {
+            return "ticks";
+        }
+        if (decoder.getStatus() != engine.getStatus()) {
+            return "status";
+        }
+        if (decoder.getPoints() != engine.getPoints()) {
+            return "points";
+        }
+        Snake snake = engine.getSnake();
+        if (decoder.getDirection() != snake.getDirection()) {
+            return "direction";
+        }
+        if (decoder.getSnakeLength() != snake.getTailLength() + 1) {
+            return "snake length";
+        }
+        if (decoder.getSnakeX(0) != snake.getHeadX() || decoder.getSnakeY(0) != snake.getHeadY()) {
+            return "head";
+        }
+        for (int i = 0; i < snake.getTailLength(); i++) {
+            if (decoder.getSnakeX(i + 1) != snake.getTailX(i) || decoder.getSnakeY(i + 1) != snake.getTailY(i)) {
+                return "segment " + (i + 1);
+            }
+        }
+        Food foods = engine.getFoods();
+        if (decoder.getFoodCount() != foods.size()) {
+            return "food count";
+        }
+        for (int i = 0; i < foods.size(); i++) {
+            if (decoder.getFoodX(i) != foods.getX(i) || decoder.getFoodY(i) != foods.getY(i)
+                    || decoder.getFoodType(i) != foods.getType(i)) {
+                return "food " + i;
+            }
+        }
+        if (keyframe) {
+            if (decoder.getWidth() != engine.getWidth() || decoder.getHeight() != engine.getHeight()) {
+                return "map size";
+            }
+            Rock rock = engine.getRock();
+            if (decoder.getRockCount() != rock.getCount()) {
+                return "rock count";
+            }
+            for (int i = 0; i < rock.getCount(); i++) {
+                if (decoder.getRockX(i) != rock.getSortedX(i) || decoder.getRockY(i) != rock.getSortedY(i)) {
+                    return "rock " + i;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Captures snapshots of a game, plays on a few ticks and restores them, comparing the restored game
+     * with the captured state and with a new game restored from the written snapshot, then plays both
+     * games on side by side.
+     *
+     * @param seed   the seed of the game.
+     * @param config the settings of the game.
+     */
+    private static void checkSnapshots(long seed, GameConfig config) {
+        GameEngine engine = new GameEngine(seed, config);
+        engine.reset();
+        Strategy strategy = new GreedyStrategy();
+        GameRandom random = new GameRandom(seed);
+        GameSnapshot snapshot = new GameSnapshot();
+        GameSnapshot copy = new GameSnapshot();
+
+        for (int round = 0; round < SNAPSHOTS; round++) {
+            int lead = (int) (random.nextDouble() * MAX_LEAD_TICKS);
+            for (int t = 0; t < lead; t++) {
+                if (engine.getStatus() == GameStatus.GAME_OVER) {
+                    engine.reset();
+                }
+                engine.step(chooseInput(engine, strategy, random));
+            }
+
+            snapshot.capture(engine);
+            long expected = fingerprint(engine);
+            long free = engine.getOccupancy().getFreeCount();
+            int length = engine.getSnake().getTailLength();
+            long moves = engine.getSnake().getMoves();
+            int rollback = (int) (random.nextDouble() * MAX_ROLLBACK_TICKS);
+            for (int t = 0; t < rollback; t++) {
+                engine.step(chooseInput(engine, strategy, random));
+            }
+            // Only a snake that has just moved, and not far, is restored by undoing its moves
+            if (engine.getSnake().getTailLength() == length && engine.getSnake().getMoves() - moves <= length) {
+                undone++;
+            } else if (engine.getSnake().getTailLength() > length) {
+                eaten++;
+            }
+
+            String what = "snapshot " + seed + " round " + round + " after " + rollback + " ticks";
+            snapshot.restore(engine);
+            compare(what, fingerprint(engine), expected);
+            if (engine.getOccupancy().getFreeCount() != free) {
+                fail(what + " free cells " + engine.getOccupancy().getFreeCount() + ", captured " + free);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(snapshot.getSize());
+            snapshot.write(buffer);
+            copy.read(buffer.flip());
+            GameEngine fresh = new GameEngine(seed, config);
+            fresh.reset();
+            copy.restore(fresh);
+            for (int t = 0; t <= LOCKSTEP_TICKS; t++) {
+                if (t > 0) {
+                    Direction input = chooseInput(engine, strategy, random);
+                    engine.step(input);
+                    fresh.step(input);
+                }
+                if (fingerprint(engine) != fingerprint(fresh)
+                        || engine.getOccupancy().getFreeCount() != fresh.getOccupancy().getFreeCount()) {
+                    fail(what + " differs from a restored new game " + t + " ticks on");
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the input of a tick: mostly what the strategy decides, sometimes a random turn.
+     *
+     * @param engine   the game.
+     * @param strategy the strategy.
+     * @param random   the source of the random turns.
+     * @return the direction, or null to go straight.
+     */
+    private static Direction chooseInput(GameEngine engine, Strategy strategy, GameRandom random) {
+        if (random.nextDouble() < TURN_CHANCE) {
+            return DIRECTIONS[(int) (random.nextDouble() * DIRECTIONS.length)];
+        }
+        return strategy.decide(engine);
+    }
+
+    /**
+     * Hashes everything about a game that changes while it is played.
+     *
+     * @param engine the game.
+     * @return the hash.
+     */
+    static long fingerprint(GameEngine engine) {
+        Snake snake = engine.getSnake();
+        long h = engine.getRandom().getState();
+        h = h * 31 + engine.getTicks();
+        h = h * 31 + engine.getPoints();
+        h = h * 31 + engine.getStatus().ordinal();
+        h = h * 31 + engine.getDeathCause().ordinal();
+        h = h * 31 + snake.getDirection().ordinal();
+        h = h * 31 + snake.getHead();
+        for (int i = 0; i < snake.getTailLength(); i++) {
+            h = h * 31 + snake.getTail(i);
+        }
+        Food foods = engine.getFoods();
+        for (int i = 0; i < foods.size(); i++) {
+            h = h * 31 + Point.pack(foods.getX(i), foods.getY(i));
+            h = h * 31 + foods.getType(i).ordinal();
+        }
+        return h;
+    }
+
+    /**
+     * Counts a mismatch if two fingerprints differ, reporting the first few.
+     *
+     * @param what     what was compared.
+     * @param actual   the fingerprint read back.
+     * @param expected the fingerprint recorded.
+     */
+    private static void compare(String what, long actual, long expected) {
+        if (actual != expected) {
+            fail(what + " differs");
+        }
+    }
+
+    /**
+     * Counts a mismatch, reporting the first few.
+     *
+     * @param message what differs.
+     */
+    private static void fail(String message) {
+        if (mismatches++ < 10) {
+            System.err.println(message);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.snakegame;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the collision checks with varying numbers of rocks:
+ * looking up random cells among the rocks, and checking a running game for its end.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"15", "150", "1500"})
+    public int rocks;
+
+    private Rock rock;
+    private final int[] xs = new int[QUERIES];
+    private final int[] ys = new int[QUERIES];
+    private int query;
+    private GameEngine engine;
+
+    /**
+     * Places the rocks on a standard playing field, picks the cells to look up and starts a game among as many rocks.
+     */
+    @Setup
+    public void setUp() {
+        GameRandom random = new GameRandom(1);
+        Occupancy occupancy = new Occupancy(GameEngine.BORDER, GameEngine.BORDER, GameEngine.WIDTH, GameEngine.HEIGHT);
+        rock = new Rock(rocks, GameEngine.WIDTH, GameEngine.HEIGHT, GameEngine.BORDER, occupancy, random);
+        for (int i = 0; i < QUERIES; i++) {
+            xs[i] = GameEngine.BORDER + random.nextInt(GameEngine.WIDTH / 10) * 10;
+            ys[i] = GameEngine.BORDER + random.nextInt(GameEngine.HEIGHT / 10) * 10;
+        }
+
+        engine = new GameEngine(1, new GameConfig().setNumRocks(rocks));
+        engine.reset();
+    }
+
+    /**
+     * Checks the next cell against the rocks.
+     *
+     * @return whether the cell holds a rock.
+     */
+    @Benchmark
+    public boolean collidesWith() {
+        int k = query++ & (QUERIES - 1);
+        return rock.collidesWith(xs[k], ys[k]);
+    }
+
+    /**
+     * Checks the running game for the end of the game.
+     *
+     * @return the points of the game.
+     */
+    @Benchmark
+    public int checkForGameOver() {
+        engine.checkForGameOver();
+        return engine.getPoints();
+    }
+}
@@ -0,0 +1,60 @@
+package com.snakegame;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of the per-food update of every food type, with varying numbers of foods of one type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FoodUpdateBenchmark {
+    @Param({"RED", "YELLOW", "MAGENTA"})
+    public String type;
+
+    @Param({"1", "100", "10000"})
+    public int foods;
+
+    private GameEngine engine;
+
+    /**
+     * Starts a game with the foods and drives its snake into the wall, so the foods can never be eaten.
+     */
+    @Setup
+    public void setUp() {
+        GameConfig config = new GameConfig().setNumFoods(foods).setFoodType(FoodType.valueOf(type));
+        engine = null;
+        for (long seed = 1; engine == null || engine.getDeathCause() != DeathCause.WALL; seed++) {
+            engine = new GameEngine(seed, config);
+            engine.reset();
+            while (engine.step(null) == GameStatus.RUNNING) {
+                // Keep going straight until the snake dies
+            }
+        }
+    }
+
+    /**
+     * Updates every food once.
+     *
+     * @return the x-coordinate of the first food.
+     */
+    @Benchmark
+    public int update() {
+        engine.updateFoods();
+        return engine.getFoods().getX(0);
+    }
+}
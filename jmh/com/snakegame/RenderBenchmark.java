@@ -0,0 +1,98 @@
+package com.snakegame;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of rendering a running game into an offscreen BufferedImage:
+ * the whole panel, only the cell around the head as after a tick, and a frame as an ActiveView draws it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+    private static final int WIDTH = 540;
+    private static final int HEIGHT = 580;
+
+    private Game game;
+    private BufferedImage image;
+    private Graphics2D g2d;
+    private Graphics2D clipped;
+
+    /**
+     * Plays a few ticks of a standard game and creates the image to draw into.
+     */
+    @Setup
+    public void setUp() {
+        GameEngine engine = new GameEngine(1, new GameConfig());
+        engine.reset();
+        for (int i = 0; i < 10; i++) {
+            engine.step(null);
+        }
+
+        game = new Game(engine);
+        game.setSize(WIDTH, HEIGHT);
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g2d = image.createGraphics();
+        clipped = image.createGraphics();
+        Snake snake = engine.getSnake();
+        clipped.setClip(snake.getHeadX(), snake.getHeadY(), 10, 10);
+    }
+
+    /**
+     * Releases the graphics contexts.
+     */
+    @TearDown
+    public void tearDown() {
+        g2d.dispose();
+        clipped.dispose();
+    }
+
+    /**
+     * Renders the whole panel.
+     *
+     * @return a pixel of the image.
+     */
+    @Benchmark
+    public int render() {
+        game.paintComponent(g2d);
+        return image.getRGB(0, 0);
+    }
+
+    /**
+     * Renders only the cell around the head.
+     *
+     * @return a pixel of the image.
+     */
+    @Benchmark
+    public int renderDirtyCell() {
+        game.paintComponent(clipped);
+        return image.getRGB(0, 0);
+    }
+
+    /**
+     * Draws a frame the way an ActiveView does.
+     *
+     * @return a pixel of the image.
+     */
+    @Benchmark
+    public int renderActive() {
+        game.paintActive(g2d, WIDTH, HEIGHT, null);
+        return image.getRGB(0, 0);
+    }
+}
@@ -0,0 +1,67 @@
+package com.snakegame;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of moving the snake at several tail lengths.
+ * The snake circles the edge of a square too large for it to bite itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnakeMoveBenchmark {
+    private static final int SIDE = 600;
+    private static final Direction[] CLOCKWISE = {Direction.DOWN, Direction.LEFT, Direction.UP, Direction.RIGHT};
+
+    @Param({"4", "256", "2304"})
+    public int length;
+
+    private Snake snake;
+    private int steps;
+    private int turns;
+
+    /**
+     * Grows the snake to its length and moves it once around that length,
+     * so no segment is left where it was added.
+     */
+    @Setup
+    public void setUp() {
+        Occupancy occupancy = new Occupancy(0, 0, SIDE * 10, SIDE * 10);
+        snake = new Snake(0, 0, occupancy);
+        for (int i = 4; i < length; i++) {
+            snake.addTail();
+        }
+        for (int i = 0; i < length; i++) {
+            move();
+        }
+    }
+
+    /**
+     * Moves the snake one cell, turning clockwise at the corners of the square.
+     *
+     * @return the x-coordinate of the head.
+     */
+    @Benchmark
+    public int move() {
+        snake.move();
+        if (++steps == SIDE - 1) {
+            steps = 0;
+            snake.turn(CLOCKWISE[turns++ & 3]);
+        }
+        return snake.getHeadX();
+    }
+}
@@ -0,0 +1,116 @@
+package com.snakegame;
+
+import java.awt.*;
+import java.awt.event.KeyListener;
+import java.awt.image.BufferStrategy;
+
+/**
+ * The ActiveView class shows a Game on a Canvas that is redrawn by its own loop at the refresh rate of the display,
+ * instead of waiting for Swing to paint after every tick. It draws into the back buffer of a BufferStrategy and
+ * flips it onto the screen, flipping pages when the display supports it and copying the buffer otherwise,
+ * and the snake glides between ticks instead of jumping a cell at a time.
+ * The time between two frames shown is recorded in the metrics of the game.
+ *
+ * Active rendering only pays off where the back buffer lives in video memory;
+ * elsewhere the Game panel should be shown itself, which isSupported tells.
+ */
+class ActiveView extends Canvas {
+    private static final int DEFAULT_REFRESH_RATE = 60;
+    private static final int BUFFERS = 2;
+    private static final ImageCapabilities ACCELERATED = new ImageCapabilities(true);
+
+    private final Game game;
+    private final GameLoop loop;
+    private BufferStrategy strategy;
+    private long lastShown;
+
+    /**
+     * Creates a view of the given game. Drawing starts when the view is added to a shown window.
+     *
+     * @param game the game to show, which must not be shown itself.
+     * @param gc   the configuration of the screen the view is shown on.
+     */
+    public ActiveView(Game game, GraphicsConfiguration gc) {
+        super(gc);
+        this.game = game;
+        for (KeyListener listener : game.getKeyListeners()) {
+            addKeyListener(listener);
+        }
+        setIgnoreRepaint(true);
+        setFocusable(true);
+
+        int refreshRate = gc.getDevice().getDisplayMode().getRefreshRate();
+        if (refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN) {
+            refreshRate = DEFAULT_REFRESH_RATE;
+        }
+        // A late frame is simply dropped, the next one shows the game as it is then
+        loop = new GameLoop("render-loop", this::renderFrame, refreshRate, 1);
+    }
+
+    /**
+     * Checks if active rendering is worth it on the given screen: there is a display,
+     * and the back buffer of a window can be kept in accelerated memory.
+     *
+     * @param gc the configuration of the screen, or null if it is not known.
+     * @return true if an ActiveView should be used, false if the Game panel should be shown instead.
+     */
+    public static boolean isSupported(GraphicsConfiguration gc) {
+        return !GraphicsEnvironment.isHeadless() && gc != null
+                && gc.getBufferCapabilities().getBackBufferCapabilities().isAccelerated();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        try {
+            createBufferStrategy(BUFFERS, new BufferCapabilities(ACCELERATED, ACCELERATED,
+                    BufferCapabilities.FlipContents.UNDEFINED));
+        } catch (AWTException e) {
+            // Page flipping is usually only possible in full screen; copying the back buffer comes next best
+            createBufferStrategy(BUFFERS);
+        }
+        strategy = getBufferStrategy();
+        loop.resume();
+    }
+
+    @Override
+    public void removeNotify() {
+        // A loop cannot be restarted, so a view is shown only once
+        loop.stop();
+        super.removeNotify();
+    }
+
+    /**
+     * Draws the latest frame of the game into the back buffer and shows it,
+     * drawing again as long as the contents of the buffers were lost meanwhile.
+     */
+    private void renderFrame() {
+        do {
+            do {
+                Graphics2D g2d = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    game.paintActive(g2d, getWidth(), getHeight(), getGraphicsConfiguration());
+                } finally {
+                    g2d.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+
+        long now = System.nanoTime();
+        if (lastShown != 0) {
+            game.getMetrics().recordFrameInterval(now - lastShown);
+        }
+        lastShown = now;
+    }
+
+    /**
+     * Returns the loop drawing the frames, for its frame rate and late frames.
+     *
+     * @return the render loop.
+     */
+    public GameLoop getLoop() {
+        return loop;
+    }
+}
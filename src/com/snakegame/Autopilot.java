@@ -0,0 +1,680 @@
+package com.snakegame;
+
+import java.util.Arrays;
+
+/**
+ * The Autopilot steers the snake along the shortest path to the closest food, found by a breadth-first
+ * search over the cells around the head. Walls, rocks and the snake itself block the search, except that
+ * a segment of the snake counts as free once the tail will have moved off it by the time the head gets there.
+ *
+ * A path is only taken if the snake can still reach its tail, or enough room for its length, after the
+ * first step. Otherwise the Autopilot falls back to buying time: following its tail, or with the CYCLE
+ * fallback, a cycle through every cell of the map when the map has one.
+ *
+ * On large maps the search only looks at a window of cells around the head, and runs A* towards the
+ * nearest food instead, since a breadth-first search would cover most of the window to find it.
+ * All buffers are allocated once for the largest window and reused: a generation stamp marks which
+ * cells the current search has seen, so nothing has to be cleared between decisions and no objects
+ * are created while deciding. Rocks never move, so what is known about them is kept from one
+ * decision to the next, by cell of the map, as long as the game stays the same.
+ */
+class Autopilot implements Strategy {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int CELL_SIZE = Occupancy.CELL_SIZE;
+
+    // The search looks at no more than this many columns and rows around the head
+    private static final int WINDOW = 128;
+
+    private final Fallback fallback;
+
+    // The search buffers, indexed by cell within the window
+    private final int[] queue = new int[WINDOW * WINDOW];
+    private final int[] distance = new int[WINDOW * WINDOW];
+    private final byte[] firstStep = new byte[WINDOW * WINDOW];
+    private final int[] seen = new int[WINDOW * WINDOW];
+    private final int[] estimate = new int[WINDOW * WINDOW];
+    private final int[] heap = new int[WINDOW * WINDOW];
+    private int heapSize;
+    private int generation;
+
+    // The snake and the foods of the current decision, by cell within the window
+    private final int[] snakeStamp = new int[WINDOW * WINDOW];
+    private final int[] freeAfter = new int[WINDOW * WINDOW];
+    private final int[] foodStamp = new int[WINDOW * WINDOW];
+    private int decision;
+
+    // Whether there is a rock, by the cell of the map modulo the window, which no window has two of
+    private final long[] rockCell = new long[WINDOW * WINDOW];
+    private final boolean[] rock = new boolean[WINDOW * WINDOW];
+    private Occupancy rockOccupancy;
+
+    // The window of the current decision, in cells of the map
+    private Occupancy occupancy;
+    private int cols;
+    private int rows;
+    private int left;
+    private int top;
+    private int width;
+    private int height;
+
+    // What the last flood found
+    private int floodCount;
+    private int tailDistance;
+    private boolean escaped;
+
+    private long decisions;
+    private long nodes;
+
+    /**
+     * Creates a new Autopilot that follows its tail when no path is safe.
+     */
+    public Autopilot() {
+        this(Fallback.TAIL);
+    }
+
+    /**
+     * Creates a new Autopilot with the given fallback.
+     *
+     * @param fallback what to do when no path to food is safe.
+     */
+    public Autopilot(Fallback fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Direction decide(GameEngine engine) {
+        decisions++;
+        Snake snake = engine.getSnake();
+        occupancy = engine.getOccupancy();
+        if (occupancy != rockOccupancy) {
+            Arrays.fill(rockCell, -1);
+            rockOccupancy = occupancy;
+        }
+        cols = occupancy.getWidth() / CELL_SIZE;
+        rows = occupancy.getHeight() / CELL_SIZE;
+        int headCol = column(snake.getHeadX());
+        int headRow = row(snake.getHeadY());
+        if (headCol < 0 || headRow < 0 || headCol >= cols || headRow >= rows) {
+            return null;
+        }
+
+        // Center the window on the head, keeping it inside the map
+        width = Math.min(cols, WINDOW);
+        height = Math.min(rows, WINDOW);
+        left = Math.max(0, Math.min(cols - width, headCol - width / 2));
+        top = Math.max(0, Math.min(rows - height, headRow - height / 2));
+
+        int head = (headRow - top) * width + headCol - left;
+        int length = snake.getTailLength() + 1;
+        if (++decision == 0) {
+            Arrays.fill(snakeStamp, 0);
+            Arrays.fill(foodStamp, 0);
+            decision = 1;
+        }
+        int tail = markSnake(snake, head);
+        Direction current = snake.getDirection();
+
+        // Take the shortest path to food if the snake is not trapped after its first step
+        Food foods = engine.getFoods();
+        int food = -1;
+        int nearest = -1;
+        if (width == cols && height == rows) {
+            markFoods(foods);
+            food = findFood(head, current);
+        } else {
+            nearest = foods.nearest(snake.getHeadX(), snake.getHeadY());
+            int target = nearest < 0 ? -1 : cell(foods.getX(nearest), foods.getY(nearest));
+            escaped = target < 0;
+            if (target >= 0) {
+                food = findPath(head, current, target);
+            }
+        }
+        if (food >= 0) {
+            Direction step = DIRECTIONS[firstStep[food]];
+            if (isSafe(head, step, tail, length)) {
+                return step;
+            }
+        } else if (escaped && nearest >= 0) {
+            // The food is out of the window or only reachable through it: head for it in a straight line
+            Direction step = towardsFood(foods.getX(nearest), foods.getY(nearest), head, current, tail, length);
+            if (step != null) {
+                return step;
+            }
+        }
+
+        if (fallback == Fallback.CYCLE && hasCycle(engine)) {
+            Direction step = cycleStep(headCol, headRow);
+            if (step != null && !isReverse(step, current) && isSafe(head, step, tail, length)) {
+                return step;
+            }
+        }
+        return followTail(head, current, tail, length);
+    }
+
+    /**
+     * Marks when every segment of the snake inside the window moves off its cell.
+     *
+     * @param snake the snake.
+     * @param head  the cell of the head.
+     * @return the cell of the last segment inside the window, or -1.
+     */
+    private int markSnake(Snake snake, int head) {
+        int tailLength = snake.getTailLength();
+        snakeStamp[head] = decision;
+        freeAfter[head] = tailLength + 1;
+
+        // Segment i is the one the head will have left i + 1 ticks ago, so it frees after tailLength - i moves
+        int tail = -1;
+        for (int i = 0; i < tailLength; i++) {
+            int cell = cell(snake.getTailX(i), snake.getTailY(i));
+            if (cell < 0) {
+                continue;
+            }
+            if (snakeStamp[cell] != decision) {
+                snakeStamp[cell] = decision;
+                freeAfter[cell] = tailLength - i;
+            }
+            tail = cell;
+        }
+        return tail;
+    }
+
+    /**
+     * Marks the cells of the window that hold food.
+     *
+     * @param foods the foods of the game.
+     */
+    private void markFoods(Food foods) {
+        for (int i = 0, size = foods.size(); i < size; i++) {
+            int cell = cell(foods.getX(i), foods.getY(i));
+            if (cell >= 0) {
+                foodStamp[cell] = decision;
+            }
+        }
+    }
+
+    /**
+     * Searches breadth first from the head for the closest food.
+     *
+     * @param head    the cell of the head.
+     * @param current the direction the snake is moving in.
+     * @return the cell of the food, or -1 if there is none in reach.
+     */
+    private int findFood(int head, Direction current) {
+        escaped = false;
+        int end = start(head);
+        for (int begin = 0; begin < end; begin++) {
+            int cell = queue[begin];
+            nodes++;
+            int col = cell % width;
+            int row = cell / width;
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                if (cell == head && isReverse(DIRECTIONS[d], current)) {
+                    continue;
+                }
+                int next = visit(cell, col, row, d);
+                if (next < 0) {
+                    continue;
+                }
+                firstStep[next] = cell == head ? (byte) d : firstStep[cell];
+                queue[end++] = next;
+                if (foodStamp[next] == decision) {
+                    return next;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Searches from the head for the shortest path to a target with A*, going by the straight-line
+     * distance that is left. A cell is settled when it is first reached, which on a grid without
+     * weights makes for paths close to the shortest at a fraction of the cost.
+     *
+     * @param head    the cell of the head.
+     * @param current the direction the snake is moving in.
+     * @param target  the cell to find a path to.
+     * @return the target, or -1 if it cannot be reached inside the window.
+     */
+    private int findPath(int head, Direction current, int target) {
+        int targetCol = target % width;
+        int targetRow = target / width;
+        start(head);
+        heapSize = 0;
+        push(head);
+        while (heapSize > 0) {
+            int cell = pop();
+            nodes++;
+            int col = cell % width;
+            int row = cell / width;
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                if (cell == head && isReverse(DIRECTIONS[d], current)) {
+                    continue;
+                }
+                int next = visit(cell, col, row, d);
+                if (next < 0) {
+                    continue;
+                }
+                firstStep[next] = cell == head ? (byte) d : firstStep[cell];
+                if (next == target) {
+                    return next;
+                }
+                estimate[next] = distance[next] + Math.abs(next % width - targetCol) + Math.abs(next / width - targetRow);
+                push(next);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a cell to the heap of cells to expand.
+     *
+     * @param cell the cell, with its estimate set.
+     */
+    private void push(int cell) {
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(cell, heap[parent])) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = cell;
+    }
+
+    /**
+     * Removes the cell with the lowest estimate from the heap.
+     *
+     * @return the cell.
+     */
+    private int pop() {
+        int top = heap[0];
+        int last = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], last)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+
+    /**
+     * Checks if a cell is expanded before another: it has the lower estimate, or is further along at the same one.
+     *
+     * @param a the first cell.
+     * @param b the second cell.
+     * @return true if the first cell comes first.
+     */
+    private boolean before(int a, int b) {
+        return estimate[a] != estimate[b] ? estimate[a] < estimate[b] : distance[a] > distance[b];
+    }
+
+    /**
+     * Floods the cells reachable after a first step, counting them, until it finds the tail,
+     * reaches the edge of the window or has counted the given number of cells.
+     *
+     * @param head  the cell of the head.
+     * @param step  the first step.
+     * @param tail  the cell of the last segment, or -1.
+     * @param limit the number of cells after which to stop.
+     * @return false if the first step is blocked, true otherwise.
+     */
+    private boolean flood(int head, Direction step, int tail, int limit) {
+        floodCount = 0;
+        tailDistance = -1;
+        escaped = false;
+        start(head);
+        int first = visit(head, head % width, head / width, step.ordinal());
+        if (first < 0) {
+            return false;
+        }
+        if (first == tail) {
+            tailDistance = 1;
+        }
+
+        queue[0] = first;
+        int end = 1;
+        for (int begin = 0; begin < end && floodCount < limit && tailDistance < 0 && !escaped; begin++) {
+            int cell = queue[begin];
+            nodes++;
+            floodCount++;
+            int col = cell % width;
+            int row = cell / width;
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int next = visit(cell, col, row, d);
+                if (next < 0) {
+                    continue;
+                }
+                if (next == tail && tailDistance < 0) {
+                    tailDistance = distance[next];
+                }
+                queue[end++] = next;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the snake still has a way out after a first step: it can reach its tail,
+     * the edge of the window, or as many cells as it is long.
+     *
+     * @param head   the cell of the head.
+     * @param step   the first step.
+     * @param tail   the cell of the last segment, or -1.
+     * @param length the length of the snake.
+     * @return true if the step is safe.
+     */
+    private boolean isSafe(int head, Direction step, int tail, int length) {
+        return flood(head, step, tail, length) && (tailDistance >= 0 || escaped || floodCount >= length);
+    }
+
+    /**
+     * Picks the safe step that gets the closest to a food, for when there is no path to it inside the window.
+     *
+     * @param foodX   the x-coordinate of the food.
+     * @param foodY   the y-coordinate of the food.
+     * @param head    the cell of the head.
+     * @param current the direction the snake is moving in.
+     * @param tail    the cell of the last segment, or -1.
+     * @param length  the length of the snake.
+     * @return the step, or null if no step is safe.
+     */
+    private Direction towardsFood(int foodX, int foodY, int head, Direction current, int tail, int length) {
+        int headX = x(head);
+        int headY = y(head);
+
+        Direction best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (Direction d : DIRECTIONS) {
+            if (isReverse(d, current)) {
+                continue;
+            }
+            int x = headX + (d == Direction.RIGHT ? CELL_SIZE : d == Direction.LEFT ? -CELL_SIZE : 0);
+            int y = headY + (d == Direction.DOWN ? CELL_SIZE : d == Direction.UP ? -CELL_SIZE : 0);
+            int distance = Math.abs(foodX - x) + Math.abs(foodY - y);
+            if (distance < bestDistance && isSafe(head, d, tail, length)) {
+                bestDistance = distance;
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Picks the step that keeps the snake alive the longest: one from which the tail can be reached,
+     * as far from it as possible, or else the one with the most room.
+     *
+     * @param head    the cell of the head.
+     * @param current the direction the snake is moving in.
+     * @param tail    the cell of the last segment, or -1.
+     * @param length  the length of the snake.
+     * @return the step, or null if every step is blocked.
+     */
+    private Direction followTail(int head, Direction current, int tail, int length) {
+        Direction best = null;
+        long bestScore = -1;
+        for (Direction d : DIRECTIONS) {
+            if (isReverse(d, current) || !flood(head, d, tail, Integer.MAX_VALUE)) {
+                continue;
+            }
+            long score = escaped ? Long.MAX_VALUE
+                    : tailDistance >= 0 ? ((long) Integer.MAX_VALUE << 1) + tailDistance
+                    : floodCount;
+            if (score > bestScore) {
+                bestScore = score;
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Starts a new search at a cell.
+     *
+     * @param cell the cell to start at.
+     * @return the number of cells in the queue.
+     */
+    private int start(int cell) {
+        if (++generation == 0) {
+            Arrays.fill(seen, 0);
+            generation = 1;
+        }
+        seen[cell] = generation;
+        distance[cell] = 0;
+        queue[0] = cell;
+        return 1;
+    }
+
+    /**
+     * Visits the neighbor of a cell if the snake can be on it by then.
+     *
+     * @param cell the cell to step from.
+     * @param col  its column in the window.
+     * @param row  its row in the window.
+     * @param d    the ordinal of the direction to step in.
+     * @return the neighbor, or -1 if it is outside the window, blocked or already seen.
+     */
+    private int visit(int cell, int col, int row, int d) {
+        switch (DIRECTIONS[d]) {
+            case UP:
+                row--;
+                break;
+            case DOWN:
+                row++;
+                break;
+            case LEFT:
+                col--;
+                break;
+            default:
+                col++;
+                break;
+        }
+        if (col < 0 || row < 0 || col >= width || row >= height) {
+            // The window ends but the map goes on
+            int mapCol = col + left;
+            int mapRow = row + top;
+            if (mapCol >= 0 && mapRow >= 0 && mapCol < cols && mapRow < rows) {
+                escaped = true;
+            }
+            return -1;
+        }
+
+        int next = row * width + col;
+        int arrival = distance[cell] + 1;
+        if (seen[next] == generation
+                || snakeStamp[next] == decision && freeAfter[next] >= arrival
+                || hasRock(col + left, row + top)) {
+            return -1;
+        }
+        seen[next] = generation;
+        distance[next] = arrival;
+        return next;
+    }
+
+    /**
+     * Checks if there is a rock on a cell of the map, asking the occupancy grid only the first time.
+     *
+     * @param col the column of the map.
+     * @param row the row of the map.
+     * @return true if there is a rock.
+     */
+    private boolean hasRock(int col, int row) {
+        int slot = (row & (WINDOW - 1)) * WINDOW + (col & (WINDOW - 1));
+        long key = (long) row * cols + col;
+        if (rockCell[slot] != key) {
+            rockCell[slot] = key;
+            rock[slot] = occupancy.hasRock(occupancy.getOriginX() + col * CELL_SIZE,
+                    occupancy.getOriginY() + row * CELL_SIZE);
+        }
+        return rock[slot];
+    }
+
+    /**
+     * Checks if the map has a cycle through every cell: it needs an even number of rows or columns and no rocks.
+     *
+     * @param engine the game.
+     * @return true if there is a cycle.
+     */
+    private boolean hasCycle(GameEngine engine) {
+        return engine.getRock().getCount() == 0 && cols > 1 && rows > 1 && (rows % 2 == 0 || cols % 2 == 0);
+    }
+
+    /**
+     * Returns the step to the next cell of the cycle.
+     *
+     * @param col the column of the head.
+     * @param row the row of the head.
+     * @return the step, or null if the head is not on the map.
+     */
+    private Direction cycleStep(int col, int row) {
+        long total = (long) cols * rows;
+        long next = (cycleIndex(col, row) + 1) % total;
+        if (row > 0 && cycleIndex(col, row - 1) == next) {
+            return Direction.UP;
+        } else if (row < rows - 1 && cycleIndex(col, row + 1) == next) {
+            return Direction.DOWN;
+        } else if (col > 0 && cycleIndex(col - 1, row) == next) {
+            return Direction.LEFT;
+        } else if (col < cols - 1 && cycleIndex(col + 1, row) == next) {
+            return Direction.RIGHT;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the position of a cell on the cycle. The cycle runs along the first row, snakes back and forth
+     * through the other rows without their first column, and returns up the first column.
+     * With an odd number of rows it does the same with rows and columns swapped.
+     *
+     * @param col the column.
+     * @param row the row.
+     * @return the position on the cycle.
+     */
+    private long cycleIndex(int col, int row) {
+        int across = cols;
+        int down = rows;
+        if (rows % 2 != 0) {
+            across = rows;
+            down = cols;
+            int swap = col;
+            col = row;
+            row = swap;
+        }
+        if (row == 0) {
+            return col;
+        }
+        long rowStart = across + (long) (row - 1) * (across - 1);
+        if (col == 0) {
+            return across + (long) (down - 1) * (across - 1) + (down - 1 - row);
+        }
+        return rowStart + (row % 2 != 0 ? across - 1 - col : col - 1);
+    }
+
+    /**
+     * Returns the cell of the window at the given coordinates.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the cell, or -1 if it is outside the window.
+     */
+    private int cell(int x, int y) {
+        int col = column(x) - left;
+        int row = row(y) - top;
+        if (col < 0 || row < 0 || col >= width || row >= height) {
+            return -1;
+        }
+        return row * width + col;
+    }
+
+    /**
+     * Returns the x-coordinate of a cell of the window.
+     *
+     * @param cell the cell.
+     * @return the x-coordinate.
+     */
+    private int x(int cell) {
+        return occupancy.getOriginX() + (left + cell % width) * CELL_SIZE;
+    }
+
+    /**
+     * Returns the y-coordinate of a cell of the window.
+     *
+     * @param cell the cell.
+     * @return the y-coordinate.
+     */
+    private int y(int cell) {
+        return occupancy.getOriginY() + (top + cell / width) * CELL_SIZE;
+    }
+
+    /**
+     * Returns the column of the map an x-coordinate is in.
+     *
+     * @param x the x-coordinate.
+     * @return the column, negative left of the map.
+     */
+    private int column(int x) {
+        return Math.floorDiv(x - occupancy.getOriginX(), CELL_SIZE);
+    }
+
+    /**
+     * Returns the row of the map a y-coordinate is in.
+     *
+     * @param y the y-coordinate.
+     * @return the row, negative above the map.
+     */
+    private int row(int y) {
+        return Math.floorDiv(y - occupancy.getOriginY(), CELL_SIZE);
+    }
+
+    /**
+     * Checks if two directions are opposite to each other.
+     *
+     * @param a the first direction.
+     * @param b the second direction.
+     * @return true if the directions are opposite, false otherwise.
+     */
+    private static boolean isReverse(Direction a, Direction b) {
+        return a != b && (a.isX() == b.isX());
+    }
+
+    /**
+     * Returns the number of decisions made.
+     *
+     * @return the number of decisions.
+     */
+    public long getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * Returns the number of cells expanded by all searches so far.
+     *
+     * @return the number of cells.
+     */
+    public long getNodesExpanded() {
+        return nodes;
+    }
+
+    /**
+     * What the Autopilot does when no path to food is safe.
+     */
+    enum Fallback {
+        /** Follow the tail, or make for the most room if it cannot be reached. */
+        TAIL,
+        /** Follow a cycle through every cell of the map, or the tail on maps without one. */
+        CYCLE
+    }
+}
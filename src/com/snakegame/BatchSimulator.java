@@ -0,0 +1,174 @@
+package com.snakegame;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * The BatchSimulator plays many headless games in parallel and aggregates their results.
+ * Games are split across a fork/join pool; every game has its own engine, strategy and random source,
+ * so the workers share nothing but the final merge. Game i is seeded with the batch seed plus i,
+ * which makes a batch reproducible. Given a ScoreStore, every finished game is appended to it.
+ */
+class BatchSimulator {
+    private static final int GAMES_PER_TASK = 64;
+    private static final int LEADERBOARD_SIZE = 5;
+
+    private final ForkJoinPool pool;
+    private final Supplier<Strategy> strategies;
+    private final int maxTicks;
+    private final long seed;
+    private ScoreStore scores;
+
+    /**
+     * Creates a new BatchSimulator.
+     *
+     * @param threads    the number of worker threads.
+     * @param strategies creates the strategy for each worker task.
+     * @param maxTicks   the number of ticks after which a game that is still running is stopped.
+     * @param seed       the seed of the first game.
+     */
+    public BatchSimulator(int threads, Supplier<Strategy> strategies, int maxTicks, long seed) {
+        this.pool = new ForkJoinPool(threads);
+        this.strategies = strategies;
+        this.maxTicks = maxTicks;
+        this.seed = seed;
+    }
+
+    /**
+     * Makes every finished game be appended to a store.
+     *
+     * @param scores the store, or null to keep no scores.
+     * @return this BatchSimulator.
+     */
+    public BatchSimulator setScores(ScoreStore scores) {
+        this.scores = scores;
+        return this;
+    }
+
+    /**
+     * Plays the given number of games and returns their aggregated results.
+     *
+     * @param games the number of games to play.
+     * @return the aggregated results.
+     */
+    public BatchStats run(int games) {
+        return pool.invoke(new Shard(0, games));
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Plays a single game to the end.
+     *
+     * @param strategy the strategy steering the snake.
+     * @param seed     the seed of the game.
+     * @return the finished game.
+     */
+    private GameEngine play(Strategy strategy, long seed) {
+        GameEngine engine = new GameEngine(seed);
+        engine.reset();
+
+        while (engine.getTicks() < maxTicks && engine.step(strategy.decide(engine)) == GameStatus.RUNNING) {
+            // Keep playing until the game is over
+        }
+        return engine;
+    }
+
+    /**
+     * A range of games, split in half until it is small enough to play on one thread.
+     */
+    private class Shard extends RecursiveTask<BatchStats> {
+        private final int from;
+        private final int to;
+
+        /**
+         * Creates a task for a range of games.
+         *
+         * @param from the index of the first game.
+         * @param to   the index after the last game.
+         */
+        Shard(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BatchStats compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                BatchStats stats = new BatchStats();
+                Strategy strategy = strategies.get();
+                for (int i = from; i < to; i++) {
+                    GameEngine engine = play(strategy, seed + i);
+                    stats.record(engine);
+                    if (scores != null) {
+                        scores.append(engine);
+                    }
+                }
+                return stats;
+            }
+
+            int mid = (from + to) >>> 1;
+            Shard left = new Shard(from, mid);
+            left.fork();
+            BatchStats right = new Shard(mid, to).compute();
+            return right.merge(left.join());
+        }
+    }
+
+    /**
+     * Runs a batch from the command line and prints the results.
+     *
+     * @param args the number of games, the number of threads, the tick limit per game, the seed,
+     *             the strategy: greedy, autopilot or cycle, and a score file to append the games to.
+     * @throws IOException if the score file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int maxTicks = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 0L;
+        String name = args.length > 4 ? args[4] : "greedy";
+
+        Supplier<Strategy> strategies;
+        switch (name) {
+            case "greedy":
+                strategies = GreedyStrategy::new;
+                break;
+            case "autopilot":
+                strategies = Autopilot::new;
+                break;
+            case "cycle":
+                strategies = () -> new Autopilot(Autopilot.Fallback.CYCLE);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + name);
+        }
+
+        ScoreStore scores = args.length > 5 ? new ScoreStore(Path.of(args[5]), LEADERBOARD_SIZE) : null;
+        BatchSimulator simulator = new BatchSimulator(threads, strategies, maxTicks, seed).setScores(scores);
+        long start = System.nanoTime();
+        BatchStats stats = simulator.run(games);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        simulator.shutdown();
+
+        System.out.println(stats);
+        if (scores != null) {
+            scores.close();
+            System.out.printf("stored: %d games in %s%n", scores.size(), args[5]);
+            for (ScoreStore.Entry entry : scores.getTop()) {
+                System.out.println("  " + entry);
+            }
+        }
+        System.out.printf("threads: %d%n", threads);
+        System.out.printf("time:    %.3f s, %.0f games/s, %.0f ticks/s%n",
+                seconds, stats.getGames() / seconds, stats.getTicks() / seconds);
+    }
+}
@@ -0,0 +1,113 @@
+package com.snakegame;
+
+/**
+ * The BatchStats class aggregates the results of many games.
+ * Partial results from different threads are combined with merge.
+ */
+class BatchStats {
+    private long games;
+    private long scoreSum;
+    private int scoreMin = Integer.MAX_VALUE;
+    private int scoreMax;
+    private long lengthSum;
+    private int lengthMax;
+    private long ticksSum;
+    private int ticksMin = Integer.MAX_VALUE;
+    private int ticksMax;
+    private final long[] deaths = new long[DeathCause.values().length];
+
+    /**
+     * Records the result of a finished game.
+     *
+     * @param engine the game to record.
+     */
+    public void record(GameEngine engine) {
+        int score = engine.getPoints();
+        int length = engine.getSnake().getTailLength() + 1;
+        int ticks = engine.getTicks();
+
+        games++;
+        scoreSum += score;
+        scoreMin = Math.min(scoreMin, score);
+        scoreMax = Math.max(scoreMax, score);
+        lengthSum += length;
+        lengthMax = Math.max(lengthMax, length);
+        ticksSum += ticks;
+        ticksMin = Math.min(ticksMin, ticks);
+        ticksMax = Math.max(ticksMax, ticks);
+        deaths[engine.getDeathCause().ordinal()]++;
+    }
+
+    /**
+     * Adds the results of another batch to this one.
+     *
+     * @param other the batch to add.
+     * @return this batch.
+     */
+    public BatchStats merge(BatchStats other) {
+        games += other.games;
+        scoreSum += other.scoreSum;
+        scoreMin = Math.min(scoreMin, other.scoreMin);
+        scoreMax = Math.max(scoreMax, other.scoreMax);
+        lengthSum += other.lengthSum;
+        lengthMax = Math.max(lengthMax, other.lengthMax);
+        ticksSum += other.ticksSum;
+        ticksMin = Math.min(ticksMin, other.ticksMin);
+        ticksMax = Math.max(ticksMax, other.ticksMax);
+        for (int i = 0; i < deaths.length; i++) {
+            deaths[i] += other.deaths[i];
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of games recorded.
+     *
+     * @return the number of games.
+     */
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * Returns the total number of ticks played in all recorded games.
+     *
+     * @return the number of ticks.
+     */
+    public long getTicks() {
+        return ticksSum;
+    }
+
+    /**
+     * Returns the number of games that ended with the given cause.
+     *
+     * @param cause the death cause.
+     * @return the number of games.
+     */
+    public long getDeaths(DeathCause cause) {
+        return deaths[cause.ordinal()];
+    }
+
+    /**
+     * Returns a summary of the batch, one statistic per line.
+     *
+     * @return the summary.
+     */
+    @Override
+    public String toString() {
+        if (games == 0) {
+            return "games: 0";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("games:  %d%n", games));
+        sb.append(String.format("score:  mean %.2f, min %d, max %d%n", (double) scoreSum / games, scoreMin, scoreMax));
+        sb.append(String.format("length: mean %.2f, max %d%n", (double) lengthSum / games, lengthMax));
+        sb.append(String.format("ticks:  mean %.2f, min %d, max %d%n", (double) ticksSum / games, ticksMin, ticksMax));
+        sb.append("deaths:");
+        for (DeathCause cause : DeathCause.values()) {
+            sb.append(String.format(" %s %d", cause, deaths[cause.ordinal()]));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,36 @@
+package com.snakegame;
+
+/**
+ * The ChaseBehavior makes foods move towards the snake's head, one step on each axis per tick,
+ * without leaving the field.
+ */
+class ChaseBehavior implements FoodBehavior {
+    private static final int STEP = Occupancy.CELL_SIZE;
+
+    @Override
+    public void update(Food food, int[] members, int count, GameEngine engine) {
+        Snake snake = engine.getSnake();
+        int headX = snake.getHeadX();
+        int headY = snake.getHeadY();
+        int minX = food.getMinX();
+        int minY = food.getMinY();
+        int maxX = food.getMaxX();
+        int maxY = food.getMaxY();
+
+        for (int k = 0; k < count; k++) {
+            int i = members[k];
+            int x = food.getX(i);
+            int y = food.getY(i);
+            int dx = Integer.signum(headX - x) * STEP;
+            int dy = Integer.signum(headY - y) * STEP;
+
+            if (x + dx < minX || x + dx > maxX) {
+                dx = 0;
+            }
+            if (y + dy < minY || y + dy > maxY) {
+                dy = 0;
+            }
+            food.move(i, dx, dy);
+        }
+    }
+}
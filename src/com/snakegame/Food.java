@@ -1,120 +1,382 @@
 package com.snakegame;
 
-import java.awt.*;
-import java.util.Random;
+import java.util.Arrays;
 
+/**
+ * Represents the kind of a food item, which decides how it moves.
+ */
 enum FoodType {
     RED, YELLOW, MAGENTA
 }
 
 /**
- * The Food class represents the food item in the game.
- * It has a position, size, color, and type.
- * The food can be of three types: RED, YELLOW, or MAGENTA.
- * The position and type of the food are randomly generated.
+ * The Food class holds every food item in the game as parallel arrays of positions and types.
+ * Foods are also grouped by type, so each food behavior can update all foods of its type
+ * in one tight pass. The positions and types are randomly generated from the game's random source,
+ * and every food is kept up to date on the occupancy grid and in a spatial index.
  */
 class Food {
-    private Point position;
-    private static final int FOOD_SIZE = 10;
-    private Color color;
-    private FoodType type;
+    public static final int FOOD_SIZE = 10;
+
+    // Below this many foods a plain scan beats searching the index
+    private static final int SCAN_LIMIT = 32;
+
+    private static final FoodType[] TYPES = FoodType.values();
+
+    private final Occupancy occupancy;
+    private final GameRandom random;
+    private final FoodType fixedType;
+
+    private final int[] x;
+    private final int[] y;
+    private final byte[] type;
+    private int count;
+
+    // For every type, the indices of the foods of that type, and where each food is in its list
+    private final int[][] members;
+    private final int[] memberCount;
+    private final int[] memberIndex;
+
+    private final FoodIndex index;
+
+    /**
+     * Creates an empty set of foods.
+     *
+     * @param capacity  the maximum number of foods.
+     * @param occupancy the grid the foods are marked on.
+     * @param random    the random source of the game.
+     * @param fixedType the type every food spawns with, or null for random types.
+     */
+    public Food(int capacity, Occupancy occupancy, GameRandom random, FoodType fixedType) {
+        this.occupancy = occupancy;
+        this.random = random;
+        this.fixedType = fixedType;
+        x = new int[capacity];
+        y = new int[capacity];
+        type = new byte[capacity];
+        members = new int[TYPES.length][capacity];
+        memberCount = new int[TYPES.length];
+        memberIndex = new int[capacity];
+        index = new FoodIndex(occupancy, x, y);
+    }
+
+    /**
+     * Adds a food at a random free position.
+     *
+     * @return the index of the new food.
+     */
+    public int add() {
+        if (count == x.length) {
+            throw new IllegalStateException("Too many foods: " + count);
+        }
+        int i = count++;
+        setType(i, generateRandomFoodType());
+        moveToFreePosition(i);
+        occupancy.addFood(x[i], y[i]);
+        index.insert(i);
+        return i;
+    }
 
     /**
-     * Constructs a new Food object with a random position and type.
+     * Respawns a food at a random position and with a random type.
      *
-     * @param mapWidth  the width of the game map.
-     * @param mapHeight the height of the game map.
+     * @param i the index of the food.
      */
-    public Food(int mapWidth, int mapHeight, int border) {
-        position = generateRandomPosition(mapWidth, mapHeight, border);
-        type = generateRandomFoodType();
-        setColor();
+    public void respawn(int i) {
+        occupancy.removeFood(x[i], y[i]);
+        index.remove(i);
+        removeMember(i);
+        setType(i, generateRandomFoodType());
+        moveToFreePosition(i);
+        occupancy.addFood(x[i], y[i]);
+        index.insert(i);
     }
 
     /**
-     * Generates a random position within the game map.
+     * Moves a food by the given offset.
      *
-     * @param mapWidth  the width of the game map.
-     * @param mapHeight the height of the game map.
-     * @return a randomly generated Point representing the position.
+     * @param i  the index of the food.
+     * @param dx change in position of the x coordinate.
+     * @param dy change in position of the y coordinate.
      */
-    private Point generateRandomPosition(int mapWidth, int mapHeight, int border) {
-        int x = ((int) (mapWidth * Math.random() + border - FOOD_SIZE) / 10) * 10;
-        int y = ((int) (mapHeight * Math.random() + border - FOOD_SIZE) / 10) * 10;
-        return new Point(x, y);
+    public void move(int i, int dx, int dy) {
+        if (dx == 0 && dy == 0) {
+            return;
+        }
+        // Add before removing, so a food alone in its chunk does not release and reallocate it
+        occupancy.addFood(x[i] + dx, y[i] + dy);
+        occupancy.removeFood(x[i], y[i]);
+        x[i] += dx;
+        y[i] += dy;
+        index.update(i);
     }
 
     /**
-     * Sets the color of the food based on its type.
+     * Moves a food to a random cell that is not taken by the snake, a rock or another food.
+     * Falls back to any random cell of the field when no free cell is found.
+     *
+     * @param i the index of the food.
      */
-    private void setColor() {
-        if (type == FoodType.RED) {
-            color = Color.RED;
-        } else if (type == FoodType.YELLOW) {
-            color = Color.YELLOW;
-        } else if (type == FoodType.MAGENTA) {
-            color = Color.MAGENTA;
-        } else {
-            color = Color.WHITE;
+    private void moveToFreePosition(int i) {
+        long cell = occupancy.randomFreeCell(random);
+        if (cell < 0) {
+            cell = occupancy.randomCell(random);
         }
+        x[i] = occupancy.cellX(cell);
+        y[i] = occupancy.cellY(cell);
     }
 
     /**
-     * Generates a random type for the food.
+     * Generates a random type for a food, unless every food has the same type.
      *
      * @return a randomly selected FoodType.
      */
     private FoodType generateRandomFoodType() {
-        int randomIndex = new Random().nextInt(FoodType.values().length);
-        return FoodType.values()[randomIndex];
+        if (fixedType != null) {
+            return fixedType;
+        }
+        return TYPES[random.nextInt(TYPES.length)];
+    }
+
+    /**
+     * Sets the type of a food and adds it to the list of its type.
+     *
+     * @param i        the index of the food.
+     * @param foodType the new type.
+     */
+    private void setType(int i, FoodType foodType) {
+        int t = foodType.ordinal();
+        type[i] = (byte) t;
+        memberIndex[i] = memberCount[t];
+        members[t][memberCount[t]++] = i;
+    }
+
+    /**
+     * Removes a food from the list of its type, moving the last member into its place.
+     *
+     * @param i the index of the food.
+     */
+    private void removeMember(int i) {
+        int t = type[i];
+        int last = members[t][--memberCount[t]];
+        members[t][memberIndex[i]] = last;
+        memberIndex[last] = memberIndex[i];
+    }
+
+    /**
+     * Copies the state of every food into flat arrays, each with room for every food.
+     *
+     * @param xs          the x-coordinates.
+     * @param ys          the y-coordinates.
+     * @param types       the type ordinals.
+     * @param memberOrder the indices of the foods, type by type in the order of the type's list.
+     * @param indexOrder  the indices of the foods in the order of the spatial index.
+     */
+    public void save(int[] xs, int[] ys, byte[] types, int[] memberOrder, int[] indexOrder) {
+        System.arraycopy(x, 0, xs, 0, count);
+        System.arraycopy(y, 0, ys, 0, count);
+        System.arraycopy(type, 0, types, 0, count);
+        int n = 0;
+        for (int t = 0; t < TYPES.length; t++) {
+            System.arraycopy(members[t], 0, memberOrder, n, memberCount[t]);
+            n += memberCount[t];
+        }
+        index.order(indexOrder);
+    }
+
+    /**
+     * Puts every food back into a state copied by save. The number of foods must be the same.
+     *
+     * @param xs          the x-coordinates.
+     * @param ys          the y-coordinates.
+     * @param types       the type ordinals.
+     * @param memberOrder the indices of the foods, type by type in the order of the type's list.
+     * @param indexOrder  the indices of the foods in the order of the spatial index.
+     */
+    public void restore(int[] xs, int[] ys, byte[] types, int[] memberOrder, int[] indexOrder) {
+        for (int i = 0; i < count; i++) {
+            // A food that has not moved keeps its mark
+            if (xs[i] != x[i] || ys[i] != y[i]) {
+                occupancy.addFood(xs[i], ys[i]);
+                occupancy.removeFood(x[i], y[i]);
+            }
+        }
+        System.arraycopy(xs, 0, x, 0, count);
+        System.arraycopy(ys, 0, y, 0, count);
+        System.arraycopy(types, 0, type, 0, count);
+
+        // The order of the lists decides the order foods move in, and with it what the random source gives them
+        Arrays.fill(memberCount, 0);
+        for (int k = 0; k < count; k++) {
+            int i = memberOrder[k];
+            int t = type[i];
+            memberIndex[i] = memberCount[t];
+            members[t][memberCount[t]++] = i;
+        }
+        index.rebuild(indexOrder, count);
     }
 
     /**
-     * Respawns the food at a random position and with a random type.
+     * Returns the number of foods.
      *
-     * @param mapWidth  the width of the game map.
-     * @param mapHeight the height of the game map.
+     * @return the food count.
      */
-    public void respawn(int mapWidth, int mapHeight, int border) {
-        type = generateRandomFoodType();
-        position = generateRandomPosition(mapWidth, mapHeight, border);
-        setColor();
+    public int size() {
+        return count;
     }
 
     /**
-     * Draws the food on the graphics object.
+     * Returns the x-coordinate of a food.
      *
-     * @param g2d the Graphics2D object to draw on.
+     * @param i the index of the food.
+     * @return the x-coordinate.
      */
-    public void draw(Graphics2D g2d) {
-        g2d.setColor(color);
-        g2d.fillRect(position.getX(), position.getY(), FOOD_SIZE, FOOD_SIZE);
+    public int getX(int i) {
+        return x[i];
     }
 
     /**
-     * Returns the position of the food.
+     * Returns the y-coordinate of a food.
      *
-     * @return the position of the food as a Point.
+     * @param i the index of the food.
+     * @return the y-coordinate.
      */
-    public Point getPosition() {
-        return position;
+    public int getY(int i) {
+        return y[i];
     }
 
     /**
-     * Returns the size of the food.
+     * Returns the type of a food.
      *
-     * @return the size of the food.
+     * @param i the index of the food.
+     * @return the type of the food.
+     */
+    public FoodType getType(int i) {
+        return TYPES[type[i]];
+    }
+
+    /**
+     * Returns the indices of the foods of a type. Only the first getMemberCount entries are valid,
+     * and the array must not be modified.
+     *
+     * @param foodType the type.
+     * @return the indices of the foods of the type.
+     */
+    public int[] getMembers(FoodType foodType) {
+        return members[foodType.ordinal()];
+    }
+
+    /**
+     * Returns the number of foods of a type.
+     *
+     * @param foodType the type.
+     * @return the number of foods.
+     */
+    public int getMemberCount(FoodType foodType) {
+        return memberCount[foodType.ordinal()];
+    }
+
+    /**
+     * Finds the food closest to a point, measured in steps along the grid.
+     * Ties go to the food with the lowest index.
+     *
+     * @param px the x-coordinate of the point.
+     * @param py the y-coordinate of the point.
+     * @return the index of the closest food, or -1 if there are no foods.
+     */
+    public int nearest(int px, int py) {
+        if (count > SCAN_LIMIT) {
+            return index.nearest(px, py);
+        }
+        int best = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int distance = Math.abs(x[i] - px) + Math.abs(y[i] - py);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the foods inside a rectangle.
+     *
+     * @param minX the smallest x-coordinate, inclusive.
+     * @param minY the smallest y-coordinate, inclusive.
+     * @param maxX the largest x-coordinate, exclusive.
+     * @param maxY the largest y-coordinate, exclusive.
+     * @param out  the array the indices of the foods are written to.
+     * @return the number of foods found, which may be more than fit in the array.
+     */
+    public int inside(int minX, int minY, int maxX, int maxY, int[] out) {
+        if (count > SCAN_LIMIT) {
+            return index.inside(minX, minY, maxX, maxY, out);
+        }
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            if (x[i] >= minX && x[i] < maxX && y[i] >= minY && y[i] < maxY) {
+                if (found < out.length) {
+                    out[found] = i;
+                }
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the spatial index of the foods.
+     *
+     * @return the index.
+     */
+    public FoodIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the size of a food.
+     *
+     * @return the size of a food.
      */
     public int getSize() {
         return FOOD_SIZE;
     }
 
     /**
-     * Returns the type of the food.
+     * Returns the smallest x-coordinate a food may move to.
+     *
+     * @return the minimum x-coordinate.
+     */
+    public int getMinX() {
+        return occupancy.getOriginX();
+    }
+
+    /**
+     * Returns the smallest y-coordinate a food may move to.
+     *
+     * @return the minimum y-coordinate.
+     */
+    public int getMinY() {
+        return occupancy.getOriginY();
+    }
+
+    /**
+     * Returns the largest x-coordinate a food may move to.
+     *
+     * @return the maximum x-coordinate.
+     */
+    public int getMaxX() {
+        return occupancy.getOriginX() + occupancy.getWidth() - FOOD_SIZE;
+    }
+
+    /**
+     * Returns the largest y-coordinate a food may move to.
      *
-     * @return the type of the food as a FoodType.
+     * @return the maximum y-coordinate.
      */
-    public FoodType getType() {
-        return type;
+    public int getMaxY() {
+        return occupancy.getOriginY() + occupancy.getHeight() - FOOD_SIZE;
     }
 }
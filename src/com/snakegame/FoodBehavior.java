@@ -0,0 +1,23 @@
+package com.snakegame;
+
+/**
+ * A FoodBehavior decides how the foods of one type move on every tick.
+ * Behaviors get all foods of their type at once and update them in a single pass.
+ * They keep no state of their own, so one instance can be shared by any number of games.
+ */
+interface FoodBehavior {
+    FoodBehavior STATIC = new StaticBehavior();
+    FoodBehavior RANDOM_WALK = new RandomWalkBehavior();
+    FoodBehavior FLEE = new FleeBehavior();
+    FoodBehavior CHASE = new ChaseBehavior();
+
+    /**
+     * Moves the given foods by one step.
+     *
+     * @param food    the foods of the game.
+     * @param members the indices of the foods to move.
+     * @param count   the number of valid entries in members.
+     * @param engine  the game the foods are in.
+     */
+    void update(Food food, int[] members, int count, GameEngine engine);
+}
@@ -0,0 +1,286 @@
+package com.snakegame;
+
+import java.util.Arrays;
+
+/**
+ * The FoodIndex class is a uniform grid over the playing field that finds foods by position.
+ * The field is split into square buckets of at least 4 by 4 cells, sized so that there are
+ * about two buckets per food, and every bucket keeps a linked list of the foods inside it, so foods can be moved between buckets in constant time and a query
+ * only looks at the buckets it overlaps.
+ * The index reads the positions from the arrays of the Food instance that owns it.
+ */
+class FoodIndex {
+    private static final int MIN_BUCKET_CELLS = 4;
+
+    private final int bucketSize;
+
+    private final int originX;
+    private final int originY;
+    private final int cols;
+    private final int rows;
+    private final int[] x;
+    private final int[] y;
+
+    // The first food of every bucket, and for every food its bucket and its neighbours in the list
+    private final int[] head;
+    private final int[] bucket;
+    private final int[] next;
+    private final int[] prev;
+
+    /**
+     * Creates an empty index over the given playing field.
+     *
+     * @param occupancy the grid whose playing field is indexed.
+     * @param x         the x-coordinates of the foods.
+     * @param y         the y-coordinates of the foods.
+     */
+    public FoodIndex(Occupancy occupancy, int[] x, int[] y) {
+        this.originX = occupancy.getOriginX();
+        this.originY = occupancy.getOriginY();
+        // Keep the number of buckets in line with the number of foods, however large the map is
+        double cellsPerBucket = (double) occupancy.getCellCount() / Math.max(1, 2 * x.length);
+        int bucketCells = Math.max(MIN_BUCKET_CELLS, (int) Math.ceil(Math.sqrt(cellsPerBucket)));
+        this.bucketSize = bucketCells * Occupancy.CELL_SIZE;
+        this.cols = (occupancy.getWidth() + bucketSize - 1) / bucketSize;
+        this.rows = (occupancy.getHeight() + bucketSize - 1) / bucketSize;
+        this.x = x;
+        this.y = y;
+
+        head = new int[cols * rows];
+        Arrays.fill(head, -1);
+        bucket = new int[x.length];
+        next = new int[x.length];
+        prev = new int[x.length];
+    }
+
+    /**
+     * Adds a food to the bucket of its current position.
+     *
+     * @param i the index of the food.
+     */
+    public void insert(int i) {
+        int b = bucketOf(x[i], y[i]);
+        bucket[i] = b;
+        prev[i] = -1;
+        next[i] = head[b];
+        if (head[b] >= 0) {
+            prev[head[b]] = i;
+        }
+        head[b] = i;
+    }
+
+    /**
+     * Removes a food from its bucket.
+     *
+     * @param i the index of the food.
+     */
+    public void remove(int i) {
+        if (prev[i] >= 0) {
+            next[prev[i]] = next[i];
+        } else {
+            head[bucket[i]] = next[i];
+        }
+        if (next[i] >= 0) {
+            prev[next[i]] = prev[i];
+        }
+    }
+
+    /**
+     * Moves a food to the bucket of its current position, if it changed bucket.
+     *
+     * @param i the index of the food.
+     */
+    public void update(int i) {
+        if (bucketOf(x[i], y[i]) != bucket[i]) {
+            remove(i);
+            insert(i);
+        }
+    }
+
+    /**
+     * Writes the indices of the foods bucket by bucket, in the order of each bucket's list.
+     * Queries return foods in that order, so it is part of the state a restored game must get back.
+     *
+     * @param out the array to write to, with room for every food.
+     * @return the number of foods written.
+     */
+    public int order(int[] out) {
+        int n = 0;
+        for (int b = 0; b < head.length; b++) {
+            for (int i = head[b]; i >= 0; i = next[i]) {
+                out[n++] = i;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Rebuilds the index from the current positions, keeping the foods of every bucket in the given order.
+     *
+     * @param order the indices of the foods, as written by order.
+     * @param count the number of foods.
+     */
+    public void rebuild(int[] order, int count) {
+        Arrays.fill(head, -1);
+        // Insertion puts a food first in its bucket, so the last one goes in first
+        for (int k = count - 1; k >= 0; k--) {
+            insert(order[k]);
+        }
+    }
+
+    /**
+     * Finds the foods on the cell at the given coordinates.
+     *
+     * @param px  the x-coordinate of the cell.
+     * @param py  the y-coordinate of the cell.
+     * @param out the array the indices of the foods are written to.
+     * @return the number of foods found, which may be more than fit in the array.
+     */
+    public int at(int px, int py, int[] out) {
+        int found = 0;
+        for (int i = head[bucketOf(px, py)]; i >= 0; i = next[i]) {
+            if (x[i] == px && y[i] == py) {
+                if (found < out.length) {
+                    out[found] = i;
+                }
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the foods whose position is within the given distance of a point.
+     *
+     * @param px     the x-coordinate of the point.
+     * @param py     the y-coordinate of the point.
+     * @param radius the largest distance, in pixels.
+     * @param out    the array the indices of the foods are written to.
+     * @return the number of foods found, which may be more than fit in the array.
+     */
+    public int within(int px, int py, int radius, int[] out) {
+        int minCol = Math.max(0, Math.floorDiv(px - radius - originX, bucketSize));
+        int maxCol = Math.min(cols - 1, Math.floorDiv(px + radius - originX, bucketSize));
+        int minRow = Math.max(0, Math.floorDiv(py - radius - originY, bucketSize));
+        int maxRow = Math.min(rows - 1, Math.floorDiv(py + radius - originY, bucketSize));
+        long radiusSquared = (long) radius * radius;
+
+        int found = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                for (int i = head[row * cols + col]; i >= 0; i = next[i]) {
+                    long dx = x[i] - px;
+                    long dy = y[i] - py;
+                    if (dx * dx + dy * dy <= radiusSquared) {
+                        if (found < out.length) {
+                            out[found] = i;
+                        }
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the foods inside a rectangle.
+     *
+     * @param minX the smallest x-coordinate, inclusive.
+     * @param minY the smallest y-coordinate, inclusive.
+     * @param maxX the largest x-coordinate, exclusive.
+     * @param maxY the largest y-coordinate, exclusive.
+     * @param out  the array the indices of the foods are written to.
+     * @return the number of foods found, which may be more than fit in the array.
+     */
+    public int inside(int minX, int minY, int maxX, int maxY, int[] out) {
+        int minCol = Math.max(0, Math.floorDiv(minX - originX, bucketSize));
+        int maxCol = Math.min(cols - 1, Math.floorDiv(maxX - 1 - originX, bucketSize));
+        int minRow = Math.max(0, Math.floorDiv(minY - originY, bucketSize));
+        int maxRow = Math.min(rows - 1, Math.floorDiv(maxY - 1 - originY, bucketSize));
+
+        int found = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                for (int i = head[row * cols + col]; i >= 0; i = next[i]) {
+                    if (x[i] >= minX && x[i] < maxX && y[i] >= minY && y[i] < maxY) {
+                        if (found < out.length) {
+                            out[found] = i;
+                        }
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the food closest to a point, measured in steps along the grid.
+     * Buckets are searched in rings around the point until no closer food can be left.
+     * Ties go to the food with the lowest index.
+     *
+     * @param px the x-coordinate of the point.
+     * @param py the y-coordinate of the point.
+     * @return the index of the closest food, or -1 if there are no foods.
+     */
+    public int nearest(int px, int py) {
+        int col = clamp(Math.floorDiv(px - originX, bucketSize), cols);
+        int row = clamp(Math.floorDiv(py - originY, bucketSize), rows);
+        int maxRing = Math.max(Math.max(col, cols - 1 - col), Math.max(row, rows - 1 - row));
+
+        int best = -1;
+        long bestDistance = Long.MAX_VALUE;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Every food in a farther ring is at least this far away on one axis
+            if (best >= 0 && bestDistance <= (long) (ring - 1) * bucketSize) {
+                break;
+            }
+            for (int r = row - ring; r <= row + ring; r++) {
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                boolean edge = r == row - ring || r == row + ring;
+                int step = edge ? 1 : Math.max(1, 2 * ring);
+                for (int c = col - ring; c <= col + ring; c += step) {
+                    if (c < 0 || c >= cols) {
+                        continue;
+                    }
+                    for (int i = head[r * cols + c]; i >= 0; i = next[i]) {
+                        long distance = Math.abs((long) x[i] - px) + Math.abs((long) y[i] - py);
+                        if (distance < bestDistance || (distance == bestDistance && i < best)) {
+                            bestDistance = distance;
+                            best = i;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the bucket containing the given coordinates, using the nearest bucket for
+     * coordinates outside the playing field.
+     *
+     * @param px the x-coordinate.
+     * @param py the y-coordinate.
+     * @return the index of the bucket.
+     */
+    private int bucketOf(int px, int py) {
+        int col = clamp(Math.floorDiv(px - originX, bucketSize), cols);
+        int row = clamp(Math.floorDiv(py - originY, bucketSize), rows);
+        return row * cols + col;
+    }
+
+    /**
+     * Clamps a bucket column or row to the grid.
+     *
+     * @param value the column or row.
+     * @param size  the number of columns or rows.
+     * @return the clamped value.
+     */
+    private static int clamp(int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+}
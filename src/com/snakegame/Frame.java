@@ -0,0 +1,220 @@
+package com.snakegame;
+
+/**
+ * The Frame class is a snapshot of everything that changes between ticks and is drawn on screen.
+ * The simulation thread captures the engine into a frame at the end of a tick and hands it
+ * to the paint thread through a FrameBuffer, so painting never reads the live game.
+ * Frames are reused; capturing only allocates when the snake or the food list outgrows the arrays.
+ * Only the foods in view of the camera are captured, so large maps cost no more to draw than small ones.
+ * A frame also knows where every segment was one tick earlier, so a view can draw the snake between two ticks.
+ */
+class Frame {
+    private long sequence;
+    private long time;
+    private int ticks;
+    private int points;
+    private GameStatus status = GameStatus.NOT_STARTED;
+    private int cameraX;
+    private int cameraY;
+
+    private long[] snake = new long[16];
+    private int snakeLength;
+    private long tailBefore;
+
+    private int[] foodX = new int[4];
+    private int[] foodY = new int[4];
+    private FoodType[] foodType = new FoodType[4];
+    private int[] visible = new int[4];
+    private int foodCount;
+
+    /**
+     * Copies the current state of the game into this frame.
+     *
+     * @param engine     the game to capture.
+     * @param sequence   the number of the frame, increasing with every capture.
+     * @param cameraX    the x-coordinate of the map shown in the window's top-left corner.
+     * @param cameraY    the y-coordinate of the map shown in the window's top-left corner.
+     * @param tailBefore the packed coordinates of the last segment before the tick.
+     */
+    public void capture(GameEngine engine, long sequence, int cameraX, int cameraY, long tailBefore) {
+        this.sequence = sequence;
+        this.time = System.nanoTime();
+        this.tailBefore = tailBefore;
+        this.cameraX = cameraX;
+        this.cameraY = cameraY;
+        this.ticks = engine.getTicks();
+        this.points = engine.getPoints();
+        this.status = engine.getStatus();
+
+        Snake s = engine.getSnake();
+        snakeLength = s.getTailLength() + 1;
+        if (snake.length < snakeLength) {
+            snake = new long[Math.max(snakeLength, snake.length * 2)];
+        }
+        snake[0] = s.getHead();
+        for (int i = 1; i < snakeLength; i++) {
+            snake[i] = s.getTail(i - 1);
+        }
+
+        Food foods = engine.getFoods();
+        int maxX = cameraX + Game.VIEW_WIDTH;
+        int maxY = cameraY + Game.VIEW_HEIGHT;
+        foodCount = foods.inside(cameraX, cameraY, maxX, maxY, visible);
+        if (visible.length < foodCount) {
+            int capacity = Math.max(foodCount, visible.length * 2);
+            visible = new int[capacity];
+            foodX = new int[capacity];
+            foodY = new int[capacity];
+            foodType = new FoodType[capacity];
+            foods.inside(cameraX, cameraY, maxX, maxY, visible);
+        }
+        for (int k = 0; k < foodCount; k++) {
+            int i = visible[k];
+            foodX[k] = foods.getX(i);
+            foodY[k] = foods.getY(i);
+            foodType[k] = foods.getType(i);
+        }
+    }
+
+    /**
+     * Returns the number of the frame.
+     *
+     * @return the sequence number, 0 for a frame that was never captured.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns when the frame was captured.
+     *
+     * @return the time, from System.nanoTime.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the x-coordinate of the map shown in the window's top-left corner.
+     *
+     * @return the x-coordinate of the camera.
+     */
+    public int getCameraX() {
+        return cameraX;
+    }
+
+    /**
+     * Returns the y-coordinate of the map shown in the window's top-left corner.
+     *
+     * @return the y-coordinate of the camera.
+     */
+    public int getCameraY() {
+        return cameraY;
+    }
+
+    /**
+     * Returns the number of ticks played when the frame was captured.
+     *
+     * @return the ticks.
+     */
+    public int getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the points scored when the frame was captured.
+     *
+     * @return the points.
+     */
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * Returns the status of the game when the frame was captured.
+     *
+     * @return the game status.
+     */
+    public GameStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the number of snake segments, head included.
+     *
+     * @return the snake length.
+     */
+    public int getSnakeLength() {
+        return snakeLength;
+    }
+
+    /**
+     * Returns the x-coordinate of a snake segment.
+     *
+     * @param i the index of the segment, 0 being the head.
+     * @return the x-coordinate.
+     */
+    public int getSnakeX(int i) {
+        return Point.unpackX(snake[i]);
+    }
+
+    /**
+     * Returns the y-coordinate of a snake segment.
+     *
+     * @param i the index of the segment, 0 being the head.
+     * @return the y-coordinate.
+     */
+    public int getSnakeY(int i) {
+        return Point.unpackY(snake[i]);
+    }
+
+    /**
+     * Returns where a snake segment was one tick before the frame. Every segment takes the place of the one
+     * in front of it, so this is the next segment, or the last one before the tick for the last segment.
+     *
+     * @param i the index of the segment, 0 being the head.
+     * @return the packed coordinates.
+     */
+    public long getPrevious(int i) {
+        return i + 1 < snakeLength ? snake[i + 1] : tailBefore;
+    }
+
+    /**
+     * Returns the number of foods.
+     *
+     * @return the food count.
+     */
+    public int getFoodCount() {
+        return foodCount;
+    }
+
+    /**
+     * Returns the x-coordinate of a food.
+     *
+     * @param i the index of the food.
+     * @return the x-coordinate.
+     */
+    public int getFoodX(int i) {
+        return foodX[i];
+    }
+
+    /**
+     * Returns the y-coordinate of a food.
+     *
+     * @param i the index of the food.
+     * @return the y-coordinate.
+     */
+    public int getFoodY(int i) {
+        return foodY[i];
+    }
+
+    /**
+     * Returns the type of a food.
+     *
+     * @param i the index of the food.
+     * @return the food type.
+     */
+    public FoodType getFoodType(int i) {
+        return foodType[i];
+    }
+}
@@ -0,0 +1,42 @@
+package com.snakegame;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The FrameBuffer class hands frames from one writer thread to one reader thread without locks.
+ * It holds three frames: the writer fills the back frame and publishes it with an atomic swap,
+ * and the reader swaps the latest published frame for the one it is done with.
+ * Each frame is owned by exactly one side at a time, so neither side ever waits for the other.
+ */
+class FrameBuffer {
+    private final AtomicReference<Frame> ready = new AtomicReference<>(new Frame());
+    private Frame back = new Frame();
+    private Frame front = new Frame();
+    private long sequence;
+
+    /**
+     * Captures the game into the back frame and publishes it. Called by the writer thread only.
+     *
+     * @param engine     the game to capture.
+     * @param cameraX    the x-coordinate of the map shown in the window's top-left corner.
+     * @param cameraY    the y-coordinate of the map shown in the window's top-left corner.
+     * @param tailBefore the packed coordinates of the last snake segment before the tick.
+     */
+    public void publish(GameEngine engine, int cameraX, int cameraY, long tailBefore) {
+        back.capture(engine, ++sequence, cameraX, cameraY, tailBefore);
+        back = ready.getAndSet(back);
+    }
+
+    /**
+     * Returns the most recently published frame. Called by the reader thread only.
+     * The frame stays valid until the next call.
+     *
+     * @return the latest frame.
+     */
+    public Frame acquire() {
+        if (ready.get().getSequence() > front.getSequence()) {
+            front = ready.getAndSet(front);
+        }
+        return front;
+    }
+}
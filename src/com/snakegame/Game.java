@@ -1,63 +1,138 @@
 package com.snakegame;
 
-import java.util.*;
-import java.util.List;
-import java.util.Timer;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
 import javax.swing.*;
 
-/**
- * Represents the status of the game.
- */
-enum GameStatus {
-    NOT_STARTED, RUNNING, PAUSED, GAME_OVER
-}
-
 /**
  * The main game panel for Snake.
+ * The engine is only touched by the loop thread; the panel paints the latest frame
+ * the loop published and forwards key presses as requests picked up by the next tick.
+ * Turns are queued, and every tick applies the first one that still changes the direction,
+ * so quick presses within one tick are played out over the next ones instead of being lost.
+ * The background, border and rocks never change during a game, so they are drawn once into
+ * an offscreen image and copied on every paint. After a tick only the cells that changed are repainted.
+ * Maps larger than the window are shown through a camera that jumps to recenter on the snake's head
+ * when it gets close to the edge of the view, so only what is in view is ever drawn.
+ * With the snake.replayDir system property set, every session is recorded there as a replay.
+ * Every finished game is kept in a ScoreStore, so the best score outlives the program.
+ * Pressing A hands the snake to the autopilot, and back.
+ * The durations of the tick phases and of painting are published through JMX as com.snakegame:type=GameMetrics.
  */
 class Game extends JPanel {
-    private Timer timer;
-    private Snake snake;
-    private Rock rock;
-    private Food food;
-    private List<Food> foods;
-    private int points = 0;
-    private int best = 0;
-    private GameStatus status;
+    private final GameLoop loop;
+    private final GameEngine engine;
+    private final GameMetrics metrics;
+    private final FrameBuffer frames = new FrameBuffer();
+    private final InputQueue inputs = new InputQueue(INPUT_CAPACITY);
+    private volatile boolean autopilotOn;
+    private final Autopilot autopilot = new Autopilot();
+    private volatile boolean resetRequested;
+    private volatile int best = 0;
+    private volatile GameStatus status;
+    private ReplayRecorder recorder;
+    private final Object stopLock = new Object();
+    private ScoreStore scores;
+
+    private int cameraX;
+    private int cameraY;
+
+    private BufferedImage backgroundLayer;
+    private int layerCameraX;
+    private int layerCameraY;
+    private int[] foodsBefore = new int[8];
+    private int hudPoints = -1;
+    private int hudBest = -1;
+    private String scoreText;
+    private String bestText;
 
     private static final Font FONT_M = new Font("MV Boli", Font.PLAIN, 24);
     private static final Font FONT_M_ITALIC = new Font("MV Boli", Font.ITALIC, 24);
     private static final Font FONT_L = new Font("MV Boli", Font.PLAIN, 84);
     private static final Font FONT_XL = new Font("MV Boli", Font.PLAIN, 150);
-    
-    public static final int BORDER = 40;
-    public static final int WIDTH = 480;
-    public static final int HEIGHT = 480;
 
-    private static final int DELAY = 50;
+    public static final int BORDER = GameEngine.BORDER;
+    public static final int WIDTH = GameEngine.WIDTH;
+    public static final int HEIGHT = GameEngine.HEIGHT;
+    public static final int VIEW_WIDTH = WIDTH + 2 * BORDER;
+    public static final int VIEW_HEIGHT = HEIGHT + 2 * BORDER;
+
+    private static final int TICKS_PER_SECOND = Integer.getInteger("snake.tickRate", 20);
+    private static final int MAP_WIDTH = Integer.getInteger("snake.mapWidth", WIDTH);
+    private static final int MAP_HEIGHT = Integer.getInteger("snake.mapHeight", HEIGHT);
+    private static final int NUM_ROCKS = Integer.getInteger("snake.rocks", 15);
+    private static final double ROCK_DENSITY = Double.parseDouble(System.getProperty("snake.rockDensity", "0"));
+    private static final String REPLAY_DIR = System.getProperty("snake.replayDir");
+    private static final int REPLAY_KEYFRAME_INTERVAL = 1000;
+    private static final String METRICS_NAME = "com.snakegame:type=GameMetrics";
+    private static final String SCORE_FILE = System.getProperty("snake.scoreFile",
+            Path.of(System.getProperty("user.home"), ".snake-scores").toString());
+    private static final int LEADERBOARD_SIZE = 10;
+    private static final int MAX_CATCH_UP = 3;
+    private static final long STOP_MILLIS = 1000;
+    private static final int INPUT_CAPACITY = 8;
+    private static final int FOOD_SIZE = 10;
+    private static final int CELL_SIZE = Occupancy.CELL_SIZE;
+    private static final int CAMERA_MARGIN = 8 * CELL_SIZE;
+
+    private static final Color BACKGROUND_COLOR = new Color(130, 205, 71);
+    private static final Color SNAKE_COLOR = new Color(33, 70, 199);
+    private static final Stroke BORDER_STROKE = new BasicStroke(4);
 
     /**
-     * Creates a new Game panel.
+     * Creates a new Game panel. The size of the map and the number of rocks can be set with the
+     * snake.mapWidth, snake.mapHeight and snake.rocks system properties, or the rocks generated
+     * as a playable level with snake.rockDensity. Finished games are kept in the file named by
+     * snake.scoreFile, .snake-scores in the home directory by default, or nowhere if it is empty.
      */
     public Game() {
+        this(new GameEngine(System.nanoTime(), new GameConfig().setSize(MAP_WIDTH, MAP_HEIGHT)
+                .setNumRocks(NUM_ROCKS).setRockDensity(ROCK_DENSITY)));
+        if (!SCORE_FILE.isEmpty()) {
+            openScores(Path.of(SCORE_FILE));
+        }
+    }
+
+    /**
+     * Creates a new Game panel showing the given game.
+     *
+     * @param engine the game to show.
+     */
+    Game(GameEngine engine) {
         addKeyListener(new GameKeyListener());
         setFocusable(true);
-        setBackground(new Color(130, 205, 71));
+        setBackground(BACKGROUND_COLOR);
         setDoubleBuffered(true);
 
-        // Initialize the list of foods and create a new food instance
-        foods = new ArrayList<>();
-        food = new Food(WIDTH, HEIGHT, BORDER);
-        foods.add(food);
+        // Show the simulation in the status it is in
+        this.engine = engine;
+        status = engine.getStatus();
+        followHead();
+        Snake snake = engine.getSnake();
+        frames.publish(engine, cameraX, cameraY, snake.getTail(snake.getTailLength() - 1));
 
-        // Create the rock and snake instances
-        rock = new Rock(15, WIDTH, HEIGHT, BORDER);
-        snake = new Snake(WIDTH / 2, HEIGHT / 2);
+        if (REPLAY_DIR != null) {
+            startRecording(Path.of(REPLAY_DIR, "snake-" + engine.getSeed() + ".replay"));
+        }
 
-        // Set the initial game status
-        status = GameStatus.NOT_STARTED;
+        // The loop thread is started the first time the game runs
+        loop = new GameLoop(this::tick, TICKS_PER_SECOND, MAX_CATCH_UP);
+
+        // Measure the ticks and the painting
+        metrics = new GameMetrics(loop);
+        engine.setMetrics(metrics);
+        try {
+            metrics.register(METRICS_NAME);
+        } catch (InstanceAlreadyExistsException e) {
+            // Another game in this JVM already publishes its metrics
+        } catch (JMException e) {
+            System.err.println("Metrics not published: " + e.getMessage());
+        }
 
         // Repaint the panel
         repaint();
@@ -65,120 +140,72 @@ class Game extends JPanel {
 
     @Override
     public void paintComponent(Graphics g) {
-        super.paintComponent(g);
+        GameMetrics.GamePhaseEvent event = metrics.begin(Phase.RENDER);
+        long start = System.nanoTime();
+
+        // The background layer covers the whole panel, so there is nothing to clear first
+        Frame frame = frames.acquire();
+        g.drawImage(getBackgroundLayer(getWidth(), getHeight(), getGraphicsConfiguration(),
+                frame.getCameraX(), frame.getCameraY()), 0, 0, null);
 
-        // Render the game components
-        render(g);
-        rock.draw((Graphics2D) g);
-        food.draw((Graphics2D) g);
+        // Render the latest frame published by the loop
+        render(g, frame, 1);
 
         Toolkit.getDefaultToolkit().sync();
+        metrics.end(Phase.RENDER, start, event);
     }
 
     /**
-     * Updates the game state.
+     * Draws the whole game for a view that renders actively, like an ActiveView.
+     * The snake is drawn between its last two ticks, as far along as the time since the last tick
+     * is along the tick period, so it glides a cell per tick instead of jumping. This shows the game
+     * up to a tick late. Only the thread of the view may call this; the panel must not be shown as well.
+     *
+     * @param g      the graphics to draw on.
+     * @param width  the width of the view.
+     * @param height the height of the view.
+     * @param gc     the configuration of the view, or null if it is not known.
      */
-    private void update() {
-        // Move the snake
-        snake.move();
-
-        // Update the behavior of each food
-        for (Food food : foods) {
-            int foodXPos = food.getPosition().getX();
-            int foodYPos = food.getPosition().getY();
-            int playerXPos = snake.getHead().getX();
-            int playerYPos = snake.getHead().getY();
-            int dx = 0, dy = 0;
-            int[][] options = { // default, xright, xleft, ydown, yup
-                {0, 0, /* */ 10, 0, /* */ -10, 0, /* */ 0, 10, /* */ 0, -10}, // 0 default
-                {0, 0, /* */ 10, 0, /* */  10, 0, /* */ 0, 10, /* */ 0, -10}, // 1
-                {0, 0, /* */ 10, 0, /* */ -10, 0, /* */ 0, 10, /* */ 0,  10}, // 2
-                {0, 0, /* */ 10, 0, /* */  10, 0, /* */ 0, 10, /* */ 0,  10}, // 3
-                {0, 0, /* */-10, 0, /* */ -10, 0, /* */ 0, 10, /* */ 0, -10}, // 4
-                {0, 0, /* */ 10, 0, /* */ -10, 0, /* */ 0,-10, /* */ 0, -10}, // 5
-                {0, 0, /* */-10, 0, /* */ -10, 0, /* */ 0,-10, /* */ 0, -10}, // 6
-                {0, 0, /* */-10, 0, /* */ -10, 0, /* */ 0, 10, /* */ 0,  10}, // 7 upper-right
-                {0, 0, /* */ 10, 0, /* */  10, 0, /* */ 0,-10, /* */ 0, -10}  // 8 lower-left
-            };
-            switch (food.getType()) {
-                case RED:
-                    // Red food behavior (stays in one place)
-                    break;
-                case YELLOW:
-                    // Yellow food behavior (moves chaotically)
-                    int validPosYellow = checkFoodPosition(foodXPos, foodYPos);
-                    int option = (int) (Math.random() * 4);
-                    dx = options[validPosYellow][option * 2];
-                    dy = options[validPosYellow][option * 2 + 1];
-                    break;
-                case MAGENTA:
-                    // Purple food behavior (runs away from the player)
-                    int validPosMagenta = checkFoodPosition(foodXPos, foodYPos);
-                    int distanceX = foodXPos - playerXPos;
-                    int distanceY = foodYPos - playerYPos;
-                    
-                    if (distanceX < 0 && validPosMagenta != 1 && validPosMagenta != 3 && validPosMagenta != 8) {
-                        dx = -10; // Move to the left
-                    } else if (distanceX > 0 && validPosMagenta != 4 && validPosMagenta != 6 && validPosMagenta != 7) {
-                        dx = 10; // Move to the right
-                    }
-                    
-                    if (distanceY < 0 && validPosMagenta != 2 && validPosMagenta != 3 && validPosMagenta != 7) {
-                        dy = -10; // Move up
-                    } else if (distanceY > 0 && validPosMagenta != 5 && validPosMagenta != 6 && validPosMagenta != 8) {
-                        dy = 10; // Move down
-                    }
-                    break;
-            }
-            food.getPosition().move(dx, dy);
+    void paintActive(Graphics2D g, int width, int height, GraphicsConfiguration gc) {
+        GameMetrics.GamePhaseEvent event = metrics.begin(Phase.RENDER);
+        long start = System.nanoTime();
 
-            // Check if the snake has collided with the food
-            if (food.getPosition().intersects(snake.getHead(), food.getSize() - 1)) {
-                snake.addTail();
-                food.respawn(WIDTH, HEIGHT, BORDER); // Respawn the food
-                points++;
-            }
+        Frame frame = frames.acquire();
+        g.drawImage(getBackgroundLayer(width, height, gc, frame.getCameraX(), frame.getCameraY()), 0, 0, null);
+        double alpha = (double) (start - frame.getTime()) / loop.getPeriodNanos();
+        render(g, frame, Math.max(0, Math.min(1, alpha)));
 
-            // Check if the game is over
-            checkForGameOver();
-        }
+        metrics.end(Phase.RENDER, start, event);
     }
 
-    private int checkFoodPosition(int pos_x, int pos_y) {
-        if (pos_x <= BORDER && pos_y <= BORDER) { // Out of bounds upper-left
-            return 3;
-        }
-        if (pos_x >= WIDTH + BORDER - food.getSize() && pos_y <= BORDER) { // Out of bounds upper-right
-            return 7;
-        }
-        if (pos_x <= BORDER && pos_y >= HEIGHT + BORDER - food.getSize()) { // Out of bounds lower-left
-            return 8;
-        }
-        if (pos_x >= WIDTH + BORDER - food.getSize() && pos_y >= HEIGHT + BORDER - food.getSize()) { // Out of bounds lower-right
-            return 6;
-        }
-        if (pos_x <= BORDER) { // Out of bounds to the left
-            return 1;
-        }
-        if (pos_y <= BORDER) { // Out of bounds up
-            return 2;
-        }
-        if (pos_x >= WIDTH + BORDER - food.getSize()) { // Out of bounds to the right
-            return 4;
-        }
-        if (pos_y >= HEIGHT + BORDER - food.getSize()) { // Out of bounds down
-            return 5;
+    /**
+     * Returns the metrics the game records into.
+     *
+     * @return the metrics.
+     */
+    GameMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops the game for good: the loop thread ends, and the replay being recorded is written and closed.
+     * Called when the window is disposed and when the program exits, whichever comes first.
+     */
+    public void stop() {
+        synchronized (stopLock) {
+            if (loop.stop(STOP_MILLIS)) {
+                closeRecording();
+            } else {
+                System.err.println("Replay not closed: the game loop did not stop");
+            }
         }
-        return 0; // In map boundaries
     }
 
     /**
-     * Resets the game to its initial state.
+     * Resets the game to its initial state. The reset itself happens on the next tick.
      */
     private void reset() {
-        points = 0;
-        food.respawn(WIDTH, HEIGHT, BORDER);
-        snake = new Snake(WIDTH / 2, HEIGHT / 2);
+        resetRequested = true;
         setStatus(GameStatus.RUNNING);
     }
 
@@ -193,19 +220,23 @@ class Game extends JPanel {
                 // TODO: Handle not started case
                 break;
             case RUNNING:
-                timer = new Timer();
-                timer.schedule(new GameLoop(), 0, DELAY);
+                loop.resume();
                 break;
             case PAUSED:
-                // TODO: Handle pause mechanic
+                loop.pause();
                 break;
             case GAME_OVER:
-                timer.cancel();
-                best = points > best ? points : best;
+                loop.pause();
+                flushRecording();
+                if (scores != null) {
+                    scores.append(engine);
+                }
+                best = engine.getPoints() > best ? engine.getPoints() : best;
                 break;
         }
 
         status = newStatus;
+        repaint();
     }
 
     /**
@@ -215,28 +246,6 @@ class Game extends JPanel {
         setStatus(status == GameStatus.PAUSED ? GameStatus.RUNNING : GameStatus.PAUSED);
     }
 
-    /**
-     * Checks if the game is over due to hitting the wall or itself.
-     */
-    private void checkForGameOver() {
-        Point head = snake.getHead();
-        boolean hitBoundary = head.getX() <= BORDER - 5
-                || head.getX() >= WIDTH + BORDER - 5
-                || head.getY() <= BORDER - 5
-                || head.getY() >= HEIGHT + BORDER - 5;
-
-        boolean ateItself = false;
-        boolean hitRock = rock.collidesWith(head);
-
-        for (Point t : snake.getTail()) {
-            ateItself = ateItself || head.equals(t);
-        }
-
-        if (hitBoundary || ateItself || hitRock) {
-            setStatus(GameStatus.GAME_OVER);
-        }
-    }
-
     /**
      * Draws a string centered horizontally on the screen.
      *
@@ -256,9 +265,11 @@ class Game extends JPanel {
     /**
      * Renders the game on the screen.
      *
-     * @param g the graphics object to draw on.
+     * @param g     the graphics object to draw on.
+     * @param frame the frame to draw.
+     * @param alpha how far the snake has moved from its previous tick to the frame, from 0 to 1.
      */
-    private void render(Graphics g) {
+    private void render(Graphics g, Frame frame, double alpha) {
         Graphics2D g2d = (Graphics2D) g;
 
         g2d.setColor(Color.BLACK);
@@ -271,14 +282,17 @@ class Game extends JPanel {
             return;
         }
 
-        Point p = snake.getHead();
+        updateHud(frame.getPoints(), best);
+        g2d.drawString(scoreText, 20, 30);
+        g2d.drawString(bestText, 630, 30);
 
-        g2d.drawString("SCORE: " + String.format("%02d", points), 20, 30);
-        g2d.drawString("BEST: " + String.format("%02d", best), 630, 30);
-
-        for (Food food : foods) {
-            g2d.fillRect(food.getPosition().getX(), food.getPosition().getY(), food.getSize(), food.getSize());
+        int cameraX = frame.getCameraX();
+        int cameraY = frame.getCameraY();
+        g2d.translate(-cameraX, -cameraY);
+        for (int i = 0, size = frame.getFoodCount(); i < size; i++) {
+            drawFood(g2d, frame, i);
         }
+        g2d.translate(cameraX, cameraY);
 
         if (status == GameStatus.GAME_OVER) {
             drawCenteredString(g2d, "Press enter to start again", FONT_M_ITALIC, 330);
@@ -289,17 +303,184 @@ class Game extends JPanel {
             g2d.drawString("Paused", 600, 14);
         }
 
-        g2d.setColor(new Color(33, 70, 199));
-        g2d.fillRect(p.getX(), p.getY(), 10, 10);
+        // Only segments inside the repainted area need to be drawn
+        g2d.translate(-cameraX, -cameraY);
+        Rectangle clip = g2d.getClipBounds();
+        g2d.setColor(SNAKE_COLOR);
+        for (int i = 0, size = frame.getSnakeLength(); i < size; i++) {
+            int x = frame.getSnakeX(i);
+            int y = frame.getSnakeY(i);
+            if (alpha < 1) {
+                // Segments that did not come from a neighbouring cell, like new ones, are not moved
+                long previous = frame.getPrevious(i);
+                int dx = x - Point.unpackX(previous);
+                int dy = y - Point.unpackY(previous);
+                if (Math.abs(dx) + Math.abs(dy) == CELL_SIZE) {
+                    x -= (int) Math.round(dx * (1 - alpha));
+                    y -= (int) Math.round(dy * (1 - alpha));
+                }
+            }
+            if (clip == null || clip.intersects(x, y, CELL_SIZE, CELL_SIZE)) {
+                g2d.fillRect(x, y, CELL_SIZE, CELL_SIZE);
+            }
+        }
+        g2d.translate(cameraX, cameraY);
+    }
 
-        for (int i = 0, size = snake.getTail().size(); i < size; i++) {
-            Point t = snake.getTail().get(i);
-            g2d.fillRect(t.getX(), t.getY(), 10, 10);
+    /**
+     * Updates the score texts when the points or the best score changed.
+     *
+     * @param points the current points.
+     * @param best   the best score.
+     */
+    private void updateHud(int points, int best) {
+        if (points != hudPoints) {
+            hudPoints = points;
+            scoreText = "SCORE: " + String.format("%02d", points);
+        }
+        if (best != hudBest) {
+            hudBest = best;
+            bestText = "BEST: " + String.format("%02d", best);
         }
+    }
 
+    /**
+     * Returns the image holding everything that does not change during a game,
+     * drawing it the first time and whenever the view is resized or the camera moved.
+     *
+     * @param viewWidth  the width of the view.
+     * @param viewHeight the height of the view.
+     * @param gc         the configuration of the view, or null if it is not known.
+     * @param cameraX    the x-coordinate of the map shown in the top-left corner.
+     * @param cameraY    the y-coordinate of the map shown in the top-left corner.
+     * @return the background layer.
+     */
+    private BufferedImage getBackgroundLayer(int viewWidth, int viewHeight, GraphicsConfiguration gc,
+            int cameraX, int cameraY) {
+        int width = Math.max(viewWidth, 1);
+        int height = Math.max(viewHeight, 1);
+        if (backgroundLayer != null && backgroundLayer.getWidth() == width && backgroundLayer.getHeight() == height
+                && layerCameraX == cameraX && layerCameraY == cameraY) {
+            return backgroundLayer;
+        }
+        layerCameraX = cameraX;
+        layerCameraY = cameraY;
+
+        backgroundLayer = gc != null
+                ? gc.createCompatibleImage(width, height)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        Graphics2D g2d = backgroundLayer.createGraphics();
+        g2d.setColor(BACKGROUND_COLOR);
+        g2d.fillRect(0, 0, width, height);
+        g2d.translate(-cameraX, -cameraY);
+        drawRocks(g2d, cameraX, cameraY, width, height);
         g2d.setColor(Color.RED);
-        g2d.setStroke(new BasicStroke(4));
-        g2d.drawRect(BORDER, BORDER, WIDTH, HEIGHT);
+        g2d.setStroke(BORDER_STROKE);
+        g2d.drawRect(BORDER, BORDER, engine.getWidth(), engine.getHeight());
+        g2d.dispose();
+
+        return backgroundLayer;
+    }
+
+    /**
+     * Draws the rocks in view, looking them up row by row.
+     *
+     * @param g2d     the Graphics2D object to draw on.
+     * @param cameraX the x-coordinate of the map shown in the top-left corner.
+     * @param cameraY the y-coordinate of the map shown in the top-left corner.
+     * @param width   the width of the view.
+     * @param height  the height of the view.
+     */
+    private void drawRocks(Graphics2D g2d, int cameraX, int cameraY, int width, int height) {
+        Rock rock = engine.getRock();
+        int size = rock.getSize();
+        int firstRow = Math.floorDiv(cameraY - size + 1, CELL_SIZE) * CELL_SIZE;
+
+        g2d.setColor(Color.GRAY);
+        for (int y = firstRow; y < cameraY + height; y += CELL_SIZE) {
+            for (int i = rock.findInRowOrder(cameraX - size + 1, y); i < rock.getCount(); i++) {
+                if (rock.getSortedY(i) != y || rock.getSortedX(i) >= cameraX + width) {
+                    break;
+                }
+                g2d.fillRect(rock.getSortedX(i), y, size, size);
+            }
+        }
+    }
+
+    /**
+     * Moves the camera when the snake's head gets close to the edge of the view.
+     * The camera recenters on the head, but never shows more than the border around the map.
+     *
+     * @return true if the camera moved, false otherwise.
+     */
+    private boolean followHead() {
+        Snake snake = engine.getSnake();
+        int x = followAxis(snake.getHeadX(), cameraX, WIDTH, engine.getWidth());
+        int y = followAxis(snake.getHeadY(), cameraY, HEIGHT, engine.getHeight());
+        boolean moved = x != cameraX || y != cameraY;
+        cameraX = x;
+        cameraY = y;
+        return moved;
+    }
+
+    /**
+     * Returns the new camera position along one axis.
+     *
+     * @param head   the position of the head.
+     * @param camera the current position of the camera.
+     * @param view   the size of the field in the window.
+     * @param map    the size of the map.
+     * @return the new position of the camera.
+     */
+    private static int followAxis(int head, int camera, int view, int map) {
+        int offset = head - camera - BORDER;
+        if (offset >= CAMERA_MARGIN && offset < view - CAMERA_MARGIN) {
+            return camera;
+        }
+        int centered = Math.floorDiv(head - BORDER - view / 2, CELL_SIZE) * CELL_SIZE;
+        return Math.max(0, Math.min(centered, map - view));
+    }
+
+    /**
+     * Schedules a repaint of the cell at the given coordinates.
+     *
+     * @param x the x-coordinate of the cell on the map.
+     * @param y the y-coordinate of the cell on the map.
+     */
+    private void repaintCell(int x, int y) {
+        repaint(x - cameraX, y - cameraY, CELL_SIZE, CELL_SIZE);
+    }
+
+    /**
+     * Draws a food item in the color of its type.
+     *
+     * @param g2d   the Graphics2D object to draw on.
+     * @param frame the frame the food is in.
+     * @param i     the index of the food.
+     */
+    private void drawFood(Graphics2D g2d, Frame frame, int i) {
+        g2d.setColor(getFoodColor(frame.getFoodType(i)));
+        g2d.fillRect(frame.getFoodX(i), frame.getFoodY(i), FOOD_SIZE, FOOD_SIZE);
+    }
+
+    /**
+     * Returns the color food of the given type is drawn in.
+     *
+     * @param type the type of the food.
+     * @return the color of the food.
+     */
+    private static Color getFoodColor(FoodType type) {
+        switch (type) {
+            case RED:
+                return Color.RED;
+            case YELLOW:
+                return Color.YELLOW;
+            case MAGENTA:
+                return Color.MAGENTA;
+            default:
+                return Color.WHITE;
+        }
     }
 
     /**
@@ -311,20 +492,25 @@ class Game extends JPanel {
             int key = e.getKeyCode();
 
             if (status == GameStatus.RUNNING) {
+                Direction turn = null;
                 switch (key) {
                     case KeyEvent.VK_LEFT:
-                        snake.turn(Direction.LEFT);
+                        turn = Direction.LEFT;
                         break;
                     case KeyEvent.VK_RIGHT:
-                        snake.turn(Direction.RIGHT);
+                        turn = Direction.RIGHT;
                         break;
                     case KeyEvent.VK_UP:
-                        snake.turn(Direction.UP);
+                        turn = Direction.UP;
                         break;
                     case KeyEvent.VK_DOWN:
-                        snake.turn(Direction.DOWN);
+                        turn = Direction.DOWN;
                         break;
                 }
+                // A full queue means the player pressed far ahead of the snake; that press is dropped
+                if (turn != null) {
+                    inputs.offer(turn, System.nanoTime());
+                }
             }
 
             if (status == GameStatus.NOT_STARTED) {
@@ -338,16 +524,186 @@ class Game extends JPanel {
             if (key == KeyEvent.VK_P) {
                 togglePause();
             }
+
+            if (key == KeyEvent.VK_A) {
+                autopilotOn = !autopilotOn;
+            }
         }
     }
 
     /**
-     * The game loop for updating the game state and repainting the panel.
+     * Advances the game by one tick, publishes the new frame and repaints the panel.
+     * Runs on the loop thread, which is the only thread touching the engine once the game started.
      */
-    private class GameLoop extends TimerTask {
-        public void run() {
-            update();
+    private void tick() {
+        boolean reset = resetRequested;
+        boolean start = !reset && engine.getStatus() == GameStatus.NOT_STARTED;
+        resetRequested = false;
+        Direction input = null;
+        if (reset) {
+            inputs.clear();
+        } else {
+            input = inputs.poll(engine.getSnake().getDirection());
+        }
+        boolean pressed = input != null;
+        if (!pressed && !reset && autopilotOn) {
+            input = autopilot.decide(engine);
+        }
+        record(reset, start, input);
+
+        boolean fullRepaint = reset || start;
+        if (reset) {
+            engine.reset();
+        } else if (start) {
+            engine.setStatus(GameStatus.RUNNING);
+        }
+
+        // Remember what is about to move, so only those cells are repainted
+        Snake snake = engine.getSnake();
+        long tailBefore = snake.getTail(snake.getTailLength() - 1);
+        int pointsBefore = engine.getPoints();
+        int foodCount = rememberFoods();
+
+        GameStatus result = engine.step(input);
+        if (pressed) {
+            metrics.recordInputLatency(System.nanoTime() - inputs.getPolledTime());
+        }
+        if (followHead()) {
+            fullRepaint = true;
+        }
+        frames.publish(engine, cameraX, cameraY, tailBefore);
+        if (result == GameStatus.GAME_OVER) {
+            setStatus(GameStatus.GAME_OVER);
+            return;
+        }
+
+        if (fullRepaint) {
             repaint();
+            return;
+        }
+
+        repaintCell(snake.getHeadX(), snake.getHeadY());
+        repaintCell(Point.unpackX(tailBefore), Point.unpackY(tailBefore));
+        for (int i = 0; i < foodCount; i++) {
+            repaintCell(foodsBefore[2 * i], foodsBefore[2 * i + 1]);
+        }
+        Food foods = engine.getFoods();
+        for (int i = 0, size = foods.size(); i < size; i++) {
+            repaintCell(foods.getX(i), foods.getY(i));
+        }
+        if (engine.getPoints() != pointsBefore) {
+            repaint(0, 0, getWidth(), BORDER);
+        }
+    }
+
+    /**
+     * Copies the food positions before a tick into a reused array.
+     *
+     * @return the number of foods.
+     */
+    private int rememberFoods() {
+        Food foods = engine.getFoods();
+        int count = foods.size();
+        if (foodsBefore.length < 2 * count) {
+            foodsBefore = new int[2 * count];
+        }
+        for (int i = 0; i < count; i++) {
+            foodsBefore[2 * i] = foods.getX(i);
+            foodsBefore[2 * i + 1] = foods.getY(i);
+        }
+        return count;
+    }
+
+    /**
+     * Starts recording the session as a replay, and closes the replay when the program exits.
+     * If the file cannot be created the game is played without recording.
+     *
+     * @param path the file to record to, which must not exist yet.
+     */
+    private void startRecording(Path path) {
+        try {
+            recorder = new ReplayRecorder(path, engine, REPLAY_KEYFRAME_INTERVAL);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "replay-close"));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Not recording a replay: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records a tick into the replay, if one is recorded. Runs on the loop thread at the start of the tick.
+     *
+     * @param reset whether the game is reset before the step.
+     * @param start whether the game is started before the step.
+     * @param input the direction passed to the step, or null.
+     */
+    private void record(boolean reset, boolean start, Direction input) {
+        if (recorder == null) {
+            return;
+        }
+        try {
+            recorder.record(engine, reset, start, input);
+        } catch (IOException e) {
+            System.err.println("Replay recording stopped: " + e.getMessage());
+            closeRecording();
+        }
+    }
+
+    /**
+     * Hands the ticks recorded so far to the writer thread of the replay, which writes them to the file
+     * without holding up the loop thread.
+     */
+    private void flushRecording() {
+        if (recorder == null) {
+            return;
+        }
+        try {
+            recorder.flush();
+        } catch (IOException e) {
+            System.err.println("Replay recording stopped: " + e.getMessage());
+            closeRecording();
+        }
+    }
+
+    /**
+     * Writes the rest of the replay and closes it. Must not run while a tick may.
+     */
+    private void closeRecording() {
+        ReplayRecorder closing = recorder;
+        recorder = null;
+        if (closing == null) {
+            return;
+        }
+        try {
+            closing.close();
+        } catch (IOException e) {
+            System.err.println("Replay not saved: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the store of finished games, starts the best score from it, and closes it when the program exits.
+     * If the store cannot be opened the game is played without keeping scores.
+     *
+     * @param path the file of the store, created if it does not exist.
+     */
+    private void openScores(Path path) {
+        try {
+            scores = new ScoreStore(path, LEADERBOARD_SIZE);
+            best = scores.getBest();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::closeScores, "score-store-close"));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Scores not kept: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the games still buffered in the store and closes it.
+     */
+    private void closeScores() {
+        try {
+            scores.close();
+        } catch (IOException e) {
+            System.err.println("Scores not saved: " + e.getMessage());
         }
     }
 }
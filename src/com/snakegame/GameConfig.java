@@ -0,0 +1,171 @@
+package com.snakegame;
+
+/**
+ * The GameConfig class holds the settings a game is created with.
+ * The defaults are those of the classic game: a 48 by 48 cell map with 15 rocks and a single food of a random type,
+ * with red food staying put, yellow food walking randomly and magenta food fleeing from the snake.
+ */
+class GameConfig {
+    private static final FoodType[] TYPES = FoodType.values();
+
+    private int width = GameEngine.WIDTH;
+    private int height = GameEngine.HEIGHT;
+    private int numRocks = 15;
+    private double rockDensity;
+    private int numFoods = 1;
+    private FoodType foodType;
+    private final FoodBehavior[] behaviors = new FoodBehavior[TYPES.length];
+
+    /**
+     * Creates a new GameConfig with the default settings.
+     */
+    public GameConfig() {
+        behaviors[FoodType.RED.ordinal()] = FoodBehavior.STATIC;
+        behaviors[FoodType.YELLOW.ordinal()] = FoodBehavior.RANDOM_WALK;
+        behaviors[FoodType.MAGENTA.ordinal()] = FoodBehavior.FLEE;
+    }
+
+    /**
+     * Sets the size of the map. Maps larger than the window scroll to follow the snake.
+     *
+     * @param width  the width of the map in pixels, a multiple of the cell size.
+     * @param height the height of the map in pixels, a multiple of the cell size.
+     * @return the modified GameConfig object.
+     * @throws IllegalArgumentException if a size is not a positive multiple of the cell size.
+     */
+    public GameConfig setSize(int width, int height) {
+        if (width <= 0 || height <= 0 || width % Occupancy.CELL_SIZE != 0 || height % Occupancy.CELL_SIZE != 0) {
+            throw new IllegalArgumentException("Map size must be a positive multiple of "
+                    + Occupancy.CELL_SIZE + ": " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    /**
+     * Returns the width of the map.
+     *
+     * @return the width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the map.
+     *
+     * @return the height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Sets the number of rocks.
+     *
+     * @param numRocks the number of rocks.
+     * @return the modified GameConfig object.
+     */
+    public GameConfig setNumRocks(int numRocks) {
+        this.numRocks = numRocks;
+        return this;
+    }
+
+    /**
+     * Returns the number of rocks.
+     *
+     * @return the number of rocks.
+     */
+    public int getNumRocks() {
+        return numRocks;
+    }
+
+    /**
+     * Sets the share of cells to put a rock on. Above zero, the rocks come from the LevelGenerator,
+     * which keeps every free cell reachable, and the number of rocks is ignored.
+     *
+     * @param rockDensity the share of cells, between 0 and LevelGenerator.MAX_DENSITY.
+     * @return the modified GameConfig object.
+     * @throws IllegalArgumentException if the density is out of range.
+     */
+    public GameConfig setRockDensity(double rockDensity) {
+        if (!(rockDensity >= 0 && rockDensity <= LevelGenerator.MAX_DENSITY)) {
+            throw new IllegalArgumentException("Rock density must be between 0 and "
+                    + LevelGenerator.MAX_DENSITY + ": " + rockDensity);
+        }
+        this.rockDensity = rockDensity;
+        return this;
+    }
+
+    /**
+     * Returns the share of cells to put a rock on.
+     *
+     * @return the density, or 0 to scatter the number of rocks at random.
+     */
+    public double getRockDensity() {
+        return rockDensity;
+    }
+
+    /**
+     * Sets the number of foods on the map at any time.
+     *
+     * @param numFoods the number of foods.
+     * @return the modified GameConfig object.
+     */
+    public GameConfig setNumFoods(int numFoods) {
+        this.numFoods = numFoods;
+        return this;
+    }
+
+    /**
+     * Returns the number of foods on the map at any time.
+     *
+     * @return the number of foods.
+     */
+    public int getNumFoods() {
+        return numFoods;
+    }
+
+    /**
+     * Makes every food spawn with the given type.
+     *
+     * @param foodType the type of every food, or null for random types.
+     * @return the modified GameConfig object.
+     */
+    public GameConfig setFoodType(FoodType foodType) {
+        this.foodType = foodType;
+        return this;
+    }
+
+    /**
+     * Returns the type every food spawns with.
+     *
+     * @return the type of every food, or null for random types.
+     */
+    public FoodType getFoodType() {
+        return foodType;
+    }
+
+    /**
+     * Sets how the foods of a type move.
+     *
+     * @param type     the food type.
+     * @param behavior the behavior of the foods of that type.
+     * @return the modified GameConfig object.
+     */
+    public GameConfig setBehavior(FoodType type, FoodBehavior behavior) {
+        behaviors[type.ordinal()] = behavior;
+        return this;
+    }
+
+    /**
+     * Returns how the foods of a type move.
+     *
+     * @param type the food type.
+     * @return the behavior of the foods of that type.
+     */
+    public FoodBehavior getBehavior(FoodType type) {
+        return behaviors[type.ordinal()];
+    }
+}
@@ -0,0 +1,403 @@
+package com.snakegame;
+
+/**
+ * Represents the status of the game.
+ */
+enum GameStatus {
+    NOT_STARTED, RUNNING, PAUSED, GAME_OVER
+}
+
+/**
+ * Represents what ended a game.
+ */
+enum DeathCause {
+    NONE, WALL, SELF, ROCK
+}
+
+/**
+ * The GameEngine class holds the state of one game of Snake and advances it one tick at a time.
+ * It has no dependency on AWT or Swing, so it can be stepped headless and as fast as the CPU allows.
+ */
+class GameEngine {
+    public static final int BORDER = 40;
+    public static final int WIDTH = 480;
+    public static final int HEIGHT = 480;
+    private static final int CELL_SIZE = Occupancy.CELL_SIZE;
+
+    private static final FoodType[] TYPES = FoodType.values();
+
+    private final GameRandom random;
+    private final Occupancy occupancy;
+    private final Rock rock;
+    private final Food foods;
+    private final FoodBehavior[] behaviors;
+    private final int[] eaten;
+    private final Snake snake;
+    private final long seed;
+    private final GameConfig config;
+    private final int width;
+    private final int height;
+    private int points = 0;
+    private int ticks = 0;
+    private GameStatus status;
+    private DeathCause deathCause = DeathCause.NONE;
+    private GameMetrics metrics;
+
+    /**
+     * Creates a new game with freshly generated rocks and food and a seed based on the current time.
+     */
+    public GameEngine() {
+        this(System.nanoTime());
+    }
+
+    /**
+     * Creates a new game with rocks and food generated from the given seed.
+     * Games created with the same seed and played with the same inputs are identical.
+     *
+     * @param seed the seed of the game's random source.
+     */
+    public GameEngine(long seed) {
+        this(seed, new GameConfig());
+    }
+
+    /**
+     * Creates a new game with the given settings, generated from the given seed.
+     *
+     * @param seed   the seed of the game's random source.
+     * @param config the settings of the game.
+     */
+    public GameEngine(long seed, GameConfig config) {
+        this.seed = seed;
+        this.config = config;
+        this.width = config.getWidth();
+        this.height = config.getHeight();
+        random = new GameRandom(seed);
+
+        // Create the occupancy grid shared by the snake, the rocks and the food
+        occupancy = new Occupancy(BORDER, BORDER, width, height);
+
+        // Create the rock and snake instances
+        if (config.getRockDensity() > 0) {
+            Level level = LevelGenerator.DEFAULT.generate(seed, config.getRockDensity(),
+                    width / CELL_SIZE, height / CELL_SIZE,
+                    (getSpawnX() - BORDER) / CELL_SIZE, (getSpawnY() - BORDER) / CELL_SIZE);
+            rock = new Rock(level, BORDER, occupancy);
+        } else {
+            rock = new Rock(config.getNumRocks(), width, height, BORDER, occupancy, random);
+        }
+        snake = new Snake(getSpawnX(), getSpawnY(), occupancy);
+
+        // Create the foods on free cells
+        foods = new Food(config.getNumFoods(), occupancy, random, config.getFoodType());
+        for (int i = 0; i < config.getNumFoods(); i++) {
+            foods.add();
+        }
+
+        eaten = new int[config.getNumFoods()];
+
+        // Look up the behavior of every food type once
+        behaviors = new FoodBehavior[TYPES.length];
+        for (FoodType type : TYPES) {
+            behaviors[type.ordinal()] = config.getBehavior(type);
+        }
+
+        // Set the initial game status
+        status = GameStatus.NOT_STARTED;
+    }
+
+    /**
+     * Advances the game by one tick if it is running.
+     *
+     * @param input the direction to turn to before moving, or null to keep going straight.
+     * @return the status of the game after the tick.
+     */
+    public GameStatus step(Direction input) {
+        if (status != GameStatus.RUNNING) {
+            return status;
+        }
+        if (metrics != null) {
+            return measuredStep(input);
+        }
+
+        if (input != null) {
+            snake.turn(input);
+        }
+
+        update();
+        ticks++;
+        return status;
+    }
+
+    /**
+     * Advances the game by one tick like step, timing every phase of it.
+     *
+     * @param input the direction to turn to before moving, or null to keep going straight.
+     * @return the status of the game after the tick.
+     */
+    private GameStatus measuredStep(Direction input) {
+        GameMetrics m = metrics;
+        GameMetrics.GamePhaseEvent tickEvent = m.begin(Phase.TICK);
+        long start = System.nanoTime();
+
+        GameMetrics.GamePhaseEvent event = m.begin(Phase.INPUT);
+        if (input != null) {
+            snake.turn(input);
+        }
+        long now = m.end(Phase.INPUT, start, event);
+
+        event = m.begin(Phase.MOVE);
+        snake.move();
+        now = m.end(Phase.MOVE, now, event);
+
+        event = m.begin(Phase.FOOD);
+        updateFoods();
+        now = m.end(Phase.FOOD, now, event);
+
+        event = m.begin(Phase.COLLISION);
+        checkForGameOver();
+        now = m.end(Phase.COLLISION, now, event);
+
+        ticks++;
+        m.end(Phase.TICK, start, now, tickEvent);
+        m.recordSize(snake.getTailLength() + 1, foods.size());
+        return status;
+    }
+
+    /**
+     * Updates the game state.
+     */
+    private void update() {
+        // Move the snake
+        snake.move();
+
+        // Move the foods and let the snake eat them
+        updateFoods();
+
+        // Check if the game is over
+        checkForGameOver();
+    }
+
+    /**
+     * Moves the foods, one batched pass per food type, then lets the snake eat what is on its head.
+     */
+    void updateFoods() {
+        for (int t = 0; t < TYPES.length; t++) {
+            FoodType type = TYPES[t];
+            behaviors[t].update(foods, foods.getMembers(type), foods.getMemberCount(type), this);
+        }
+
+        // Check if the snake has collided with any food
+        int headX = snake.getHeadX();
+        int headY = snake.getHeadY();
+        if (occupancy.foodAt(headX, headY) == 0) {
+            return;
+        }
+        int count = foods.getIndex().at(headX, headY, eaten);
+        for (int k = 0; k < count; k++) {
+            snake.addTail();
+            foods.respawn(eaten[k]); // Respawn the food
+            points++;
+        }
+    }
+
+    /**
+     * Checks if the game is over due to hitting the wall or itself.
+     */
+    void checkForGameOver() {
+        int headX = snake.getHeadX();
+        int headY = snake.getHeadY();
+
+        boolean hitBoundary = !occupancy.contains(headX, headY);
+        boolean ateItself = occupancy.snakeAt(headX, headY) > 1;
+        boolean hitRock = rock.collidesWith(headX, headY);
+
+        if (hitBoundary || ateItself || hitRock) {
+            status = GameStatus.GAME_OVER;
+            deathCause = hitBoundary ? DeathCause.WALL : ateItself ? DeathCause.SELF : DeathCause.ROCK;
+        }
+    }
+
+    /**
+     * Resets the game to its initial state and starts it.
+     */
+    public void reset() {
+        points = 0;
+        ticks = 0;
+        deathCause = DeathCause.NONE;
+        occupancy.clearSnake();
+        snake.reset(getSpawnX(), getSpawnY());
+        for (int i = 0, size = foods.size(); i < size; i++) {
+            foods.respawn(i);
+        }
+        status = GameStatus.RUNNING;
+    }
+
+    /**
+     * Returns the x-coordinate the snake starts at: the middle of the map as seen from the window's corner,
+     * which is where the classic game has always started it.
+     *
+     * @return the x-coordinate of the snake's first head.
+     */
+    private int getSpawnX() {
+        return Math.max(BORDER, width / (2 * CELL_SIZE) * CELL_SIZE);
+    }
+
+    /**
+     * Returns the y-coordinate the snake starts at.
+     *
+     * @return the y-coordinate of the snake's first head.
+     */
+    private int getSpawnY() {
+        return Math.max(BORDER, height / (2 * CELL_SIZE) * CELL_SIZE);
+    }
+
+    /**
+     * Puts back the counters of a saved game. The snake, the foods and the random source are restored by the caller.
+     *
+     * @param ticks      the number of ticks played.
+     * @param points     the points scored.
+     * @param status     the status of the game.
+     * @param deathCause what ended the game, if it is over.
+     */
+    void restore(int ticks, int points, GameStatus status, DeathCause deathCause) {
+        this.ticks = ticks;
+        this.points = points;
+        this.status = status;
+        this.deathCause = deathCause;
+    }
+
+    /**
+     * Sets the status of the game.
+     *
+     * @param status the new game status.
+     */
+    public void setStatus(GameStatus status) {
+        this.status = status;
+    }
+
+    /**
+     * Returns the status of the game.
+     *
+     * @return the game status.
+     */
+    public GameStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the number of points scored in this game.
+     *
+     * @return the points.
+     */
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * Returns the seed the game was created with.
+     *
+     * @return the seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the number of ticks played in this game.
+     *
+     * @return the ticks.
+     */
+    public int getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns what ended the game.
+     *
+     * @return the death cause, NONE while the game is not over.
+     */
+    public DeathCause getDeathCause() {
+        return deathCause;
+    }
+
+    /**
+     * Returns the settings the game was created with.
+     *
+     * @return the settings.
+     */
+    public GameConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Returns the width of the map.
+     *
+     * @return the width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the map.
+     *
+     * @return the height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the snake.
+     *
+     * @return the snake.
+     */
+    public Snake getSnake() {
+        return snake;
+    }
+
+    /**
+     * Returns the rocks.
+     *
+     * @return the rocks.
+     */
+    public Rock getRock() {
+        return rock;
+    }
+
+    /**
+     * Returns the foods.
+     *
+     * @return the foods.
+     */
+    public Food getFoods() {
+        return foods;
+    }
+
+    /**
+     * Returns the random source of the game.
+     *
+     * @return the random source.
+     */
+    GameRandom getRandom() {
+        return random;
+    }
+
+    /**
+     * Returns the occupancy grid of the game.
+     *
+     * @return the occupancy grid.
+     */
+    public Occupancy getOccupancy() {
+        return occupancy;
+    }
+
+    /**
+     * Makes every tick record how long its phases take. Set it before the game is played.
+     *
+     * @param metrics the metrics to record into, or null to stop measuring.
+     */
+    public void setMetrics(GameMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
@@ -0,0 +1,241 @@
+package com.snakegame;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The GameLoop class runs a tick at a fixed rate on a single long-lived thread.
+ * Ticks are scheduled against absolute deadlines, so the rate does not drift.
+ * When a tick overruns, the missed ticks are caught up back to back, but at most
+ * maxCatchUp of them; anything beyond that is skipped so the game never bursts.
+ * The lateness of every tick start is measured as jitter.
+ */
+class GameLoop implements Runnable {
+    private final String name;
+    private final Runnable tick;
+    private final int maxCatchUp;
+    private volatile long periodNanos;
+    private volatile boolean paused = true;
+    private volatile boolean stopped;
+    private Thread thread;
+
+    private volatile long ticks;
+    private volatile long lateTicks;
+    private volatile long skippedTicks;
+    private volatile long totalJitterNanos;
+    private volatile long maxJitterNanos;
+
+    /**
+     * Creates a new GameLoop. The loop starts paused.
+     *
+     * @param tick           the work to run on every tick.
+     * @param ticksPerSecond the tick rate.
+     * @param maxCatchUp     the maximum number of ticks run back to back after an overrun.
+     */
+    public GameLoop(Runnable tick, int ticksPerSecond, int maxCatchUp) {
+        this("game-loop", tick, ticksPerSecond, maxCatchUp);
+    }
+
+    /**
+     * Creates a new GameLoop running on a thread with the given name. The loop starts paused.
+     *
+     * @param name           the name of the loop thread.
+     * @param tick           the work to run on every tick.
+     * @param ticksPerSecond the tick rate.
+     * @param maxCatchUp     the maximum number of ticks run back to back after an overrun.
+     */
+    public GameLoop(String name, Runnable tick, int ticksPerSecond, int maxCatchUp) {
+        this.name = name;
+        this.tick = tick;
+        this.maxCatchUp = maxCatchUp;
+        setTickRate(ticksPerSecond);
+    }
+
+    /**
+     * Changes the tick rate. Takes effect from the next tick.
+     *
+     * @param ticksPerSecond the new tick rate.
+     */
+    public void setTickRate(int ticksPerSecond) {
+        if (ticksPerSecond <= 0) {
+            throw new IllegalArgumentException("Tick rate must be positive: " + ticksPerSecond);
+        }
+        periodNanos = 1_000_000_000L / ticksPerSecond;
+    }
+
+    /**
+     * Returns the time between two ticks.
+     *
+     * @return the tick period in nanoseconds.
+     */
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * Starts ticking, creating the loop thread the first time.
+     */
+    public synchronized void resume() {
+        if (stopped) {
+            return;
+        }
+        paused = false;
+        if (thread == null) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Stops ticking until resume is called. A tick in progress is finished.
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    /**
+     * Stops the loop thread for good.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Stops the loop thread for good and waits for the tick in progress to finish.
+     *
+     * @param millis the longest time to wait, in milliseconds.
+     * @return true if no tick runs anymore, false if the thread is still running one or is the caller.
+     */
+    public boolean stop(long millis) {
+        Thread t;
+        synchronized (this) {
+            stop();
+            t = thread;
+        }
+        if (t == null) {
+            return true;
+        }
+        if (t == Thread.currentThread()) {
+            return false;
+        }
+        try {
+            t.join(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !t.isAlive();
+    }
+
+    /**
+     * Checks if the loop is paused.
+     *
+     * @return true if the loop is paused, false otherwise.
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    @Override
+    public void run() {
+        long next = System.nanoTime();
+
+        while (!stopped) {
+            if (paused) {
+                LockSupport.park(this);
+                next = System.nanoTime();
+                continue;
+            }
+
+            long now = System.nanoTime();
+            if (now < next) {
+                LockSupport.parkNanos(this, next - now);
+                continue;
+            }
+
+            // Run the tick that is due, and catch up on missed ones up to the limit
+            int run = 0;
+            long period = periodNanos;
+            while (now >= next && run < maxCatchUp && !paused && !stopped) {
+                recordJitter(now - next);
+                tick.run();
+                ticks++;
+                run++;
+                next += period;
+                now = System.nanoTime();
+            }
+
+            // Too far behind: drop the backlog instead of bursting through it
+            if (now - next >= period) {
+                long missed = (now - next) / period;
+                skippedTicks += missed;
+                next += missed * period;
+            }
+        }
+    }
+
+    /**
+     * Records how late a tick started.
+     *
+     * @param jitter the lateness in nanoseconds.
+     */
+    private void recordJitter(long jitter) {
+        totalJitterNanos += jitter;
+        if (jitter > maxJitterNanos) {
+            maxJitterNanos = jitter;
+        }
+        if (jitter >= periodNanos) {
+            lateTicks++;
+        }
+    }
+
+    /**
+     * Returns the number of ticks run.
+     *
+     * @return the number of ticks.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the number of ticks that started a full period or more after their deadline.
+     *
+     * @return the number of late ticks.
+     */
+    public long getLateTicks() {
+        return lateTicks;
+    }
+
+    /**
+     * Returns the number of ticks dropped because the loop fell too far behind.
+     *
+     * @return the number of skipped ticks.
+     */
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    /**
+     * Returns the average lateness of a tick start.
+     *
+     * @return the mean jitter in nanoseconds.
+     */
+    public long getMeanJitterNanos() {
+        long n = ticks;
+        return n == 0 ? 0 : totalJitterNanos / n;
+    }
+
+    /**
+     * Returns the largest lateness of a tick start.
+     *
+     * @return the maximum jitter in nanoseconds.
+     */
+    public long getMaxJitterNanos() {
+        return maxJitterNanos;
+    }
+}
@@ -0,0 +1,222 @@
+package com.snakegame;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The phases of a tick that are measured, and painting the panel.
+ */
+enum Phase {
+    INPUT, MOVE, FOOD, COLLISION, TICK, RENDER
+}
+
+/**
+ * The GameMetrics class measures how long every phase of a tick takes, and painting the panel.
+ * Durations go into lock-free histograms that are read through JMX, along with the input latency,
+ * the time between the frames of an active view, the late ticks of the loop and the size of the game. While a JFR recording has GamePhaseEvent enabled, every
+ * phase is also emitted as an event, so its timing lines up with GC and safepoints in the recording.
+ *
+ * A game measures itself once it is given a GameMetrics; measuring a phase costs a clock read
+ * and allocates nothing unless JFR is recording the event.
+ */
+class GameMetrics implements GameMetricsMXBean {
+    private static final Phase[] PHASES = Phase.values();
+    private static final EventType EVENT_TYPE = EventType.getEventType(GamePhaseEvent.class);
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+    private final LatencyHistogram inputLatency = new LatencyHistogram();
+    private final LatencyHistogram frameInterval = new LatencyHistogram();
+    private final GameLoop loop;
+    private volatile int snakeLength;
+    private volatile int foodCount;
+
+    /**
+     * Creates new GameMetrics.
+     *
+     * @param loop the loop running the ticks, or null if there is none.
+     */
+    public GameMetrics(GameLoop loop) {
+        this.loop = loop;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Makes these metrics visible to JMX clients under the given name.
+     *
+     * @param name the object name, such as com.snakegame:type=GameMetrics.
+     * @throws JMException if the name is invalid or taken.
+     */
+    public void register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+    }
+
+    /**
+     * Starts a phase. The returned event must be passed to end.
+     *
+     * @param phase the phase.
+     * @return the JFR event of the phase, or null if no recording wants it.
+     */
+    GamePhaseEvent begin(Phase phase) {
+        if (!EVENT_TYPE.isEnabled()) {
+            return null;
+        }
+        GamePhaseEvent event = new GamePhaseEvent();
+        event.phase = phase.name();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends a phase and records its duration.
+     *
+     * @param phase the phase.
+     * @param start when the phase started, from System.nanoTime.
+     * @param event the event begin returned.
+     * @return the current time, for the start of the next phase.
+     */
+    long end(Phase phase, long start, GamePhaseEvent event) {
+        long now = System.nanoTime();
+        end(phase, start, now, event);
+        return now;
+    }
+
+    /**
+     * Ends a phase at a time that was already read, such as the end of its last nested phase.
+     *
+     * @param phase the phase.
+     * @param start when the phase started, from System.nanoTime.
+     * @param now   when the phase ended, from System.nanoTime.
+     * @param event the event begin returned.
+     */
+    void end(Phase phase, long start, long now, GamePhaseEvent event) {
+        histograms[phase.ordinal()].record(now - start);
+        if (event != null) {
+            event.commit();
+        }
+    }
+
+    /**
+     * Records how long ago a turn that was just applied was asked for.
+     *
+     * @param nanos the time from the key press to the end of the tick that applied it.
+     */
+    void recordInputLatency(long nanos) {
+        inputLatency.record(nanos);
+    }
+
+    /**
+     * Records the time between two frames shown by an active view.
+     *
+     * @param nanos the time since the previous frame was shown.
+     */
+    void recordFrameInterval(long nanos) {
+        frameInterval.record(nanos);
+    }
+
+    /**
+     * Records the size of the game after a tick.
+     *
+     * @param snakeLength the length of the snake, including the head.
+     * @param foodCount   the number of foods.
+     */
+    void recordSize(int snakeLength, int foodCount) {
+        this.snakeLength = snakeLength;
+        this.foodCount = foodCount;
+    }
+
+    /**
+     * Returns the histogram of a phase.
+     *
+     * @param phase the phase.
+     * @return the histogram.
+     */
+    LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    @Override
+    public PhaseStats getTick() {
+        return PhaseStats.of(getHistogram(Phase.TICK));
+    }
+
+    @Override
+    public PhaseStats getInput() {
+        return PhaseStats.of(getHistogram(Phase.INPUT));
+    }
+
+    @Override
+    public PhaseStats getMove() {
+        return PhaseStats.of(getHistogram(Phase.MOVE));
+    }
+
+    @Override
+    public PhaseStats getFood() {
+        return PhaseStats.of(getHistogram(Phase.FOOD));
+    }
+
+    @Override
+    public PhaseStats getCollision() {
+        return PhaseStats.of(getHistogram(Phase.COLLISION));
+    }
+
+    @Override
+    public PhaseStats getRender() {
+        return PhaseStats.of(getHistogram(Phase.RENDER));
+    }
+
+    @Override
+    public PhaseStats getInputLatency() {
+        return PhaseStats.of(inputLatency);
+    }
+
+    @Override
+    public PhaseStats getFrameInterval() {
+        return PhaseStats.of(frameInterval);
+    }
+
+    @Override
+    public long getLateTicks() {
+        return loop == null ? 0 : loop.getLateTicks();
+    }
+
+    @Override
+    public long getSkippedTicks() {
+        return loop == null ? 0 : loop.getSkippedTicks();
+    }
+
+    @Override
+    public long getMaxJitterNanos() {
+        return loop == null ? 0 : loop.getMaxJitterNanos();
+    }
+
+    @Override
+    public int getSnakeLength() {
+        return snakeLength;
+    }
+
+    @Override
+    public int getFoodCount() {
+        return foodCount;
+    }
+
+    /**
+     * A phase of a tick, or painting the panel, as a JFR event.
+     */
+    @Name("com.snakegame.GamePhase")
+    @Label("Game Phase")
+    @Category("Snake")
+    @Description("A phase of a game tick, or painting the game panel")
+    static class GamePhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+    }
+}
@@ -0,0 +1,185 @@
+package com.snakegame;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The management interface of GameMetrics, as seen in JConsole or any other JMX client.
+ * Durations are in nanoseconds and cover everything since the game was created.
+ */
+public interface GameMetricsMXBean {
+    /**
+     * Returns the durations of whole ticks.
+     *
+     * @return the statistics.
+     */
+    PhaseStats getTick();
+
+    /**
+     * Returns the durations of applying the input.
+     *
+     * @return the statistics.
+     */
+    PhaseStats getInput();
+
+    /**
+     * Returns the durations of moving the snake.
+     *
+     * @return the statistics.
+     */
+    PhaseStats getMove();
+
+    /**
+     * Returns the durations of moving the foods and eating.
+     *
+     * @return the statistics.
+     */
+    PhaseStats getFood();
+
+    /**
+     * Returns the durations of checking for collisions.
+     *
+     * @return the statistics.
+     */
+    PhaseStats getCollision();
+
+    /**
+     * Returns the durations of painting the panel.
+     *
+     * @return the statistics.
+     */
+    PhaseStats getRender();
+
+    /**
+     * Returns the time from pressing a key to the tick that moves the snake in its direction.
+     *
+     * @return the statistics.
+     */
+    PhaseStats getInputLatency();
+
+    /**
+     * Returns the time between two frames shown in active rendering, which is empty when Swing paints the game.
+     *
+     * @return the statistics.
+     */
+    PhaseStats getFrameInterval();
+
+    /**
+     * Returns the number of ticks that started a full period or more after their deadline.
+     *
+     * @return the number of late ticks.
+     */
+    long getLateTicks();
+
+    /**
+     * Returns the number of ticks dropped because the loop fell too far behind.
+     *
+     * @return the number of skipped ticks.
+     */
+    long getSkippedTicks();
+
+    /**
+     * Returns the largest lateness of a tick start.
+     *
+     * @return the maximum jitter in nanoseconds.
+     */
+    long getMaxJitterNanos();
+
+    /**
+     * Returns the length of the snake after the last tick, including the head.
+     *
+     * @return the snake length.
+     */
+    int getSnakeLength();
+
+    /**
+     * Returns the number of foods after the last tick.
+     *
+     * @return the food count.
+     */
+    int getFoodCount();
+
+    /**
+     * The statistics of one phase.
+     */
+    class PhaseStats {
+        private final long count;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+        private final long meanNanos;
+
+        /**
+         * Creates new PhaseStats.
+         *
+         * @param count     the number of times the phase ran.
+         * @param p50Nanos  the median duration.
+         * @param p99Nanos  the 99th percentile of the duration.
+         * @param maxNanos  the longest duration.
+         * @param meanNanos the average duration.
+         */
+        @ConstructorProperties({"count", "p50Nanos", "p99Nanos", "maxNanos", "meanNanos"})
+        public PhaseStats(long count, long p50Nanos, long p99Nanos, long maxNanos, long meanNanos) {
+            this.count = count;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+            this.meanNanos = meanNanos;
+        }
+
+        /**
+         * Creates the statistics of a histogram as it is now.
+         *
+         * @param histogram the histogram.
+         * @return the statistics.
+         */
+        static PhaseStats of(LatencyHistogram histogram) {
+            return new PhaseStats(histogram.getCount(), histogram.percentile(0.5), histogram.percentile(0.99),
+                    histogram.getMax(), histogram.getMean());
+        }
+
+        /**
+         * Returns the number of times the phase ran.
+         *
+         * @return the count.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the median duration.
+         *
+         * @return the duration in nanoseconds.
+         */
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        /**
+         * Returns the 99th percentile of the duration.
+         *
+         * @return the duration in nanoseconds.
+         */
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        /**
+         * Returns the longest duration.
+         *
+         * @return the duration in nanoseconds.
+         */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Returns the average duration.
+         *
+         * @return the duration in nanoseconds.
+         */
+        public long getMeanNanos() {
+            return meanNanos;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.snakegame;
+
+/**
+ * The GameRandom class is the random source of a single game.
+ * It uses the SplitMix64 algorithm, the same one behind java.util.SplittableRandom,
+ * but keeps its state in one readable long so a game can be reproduced from its seed.
+ * It is not thread-safe; every game owns its own instance.
+ */
+final class GameRandom {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    /**
+     * Creates a new GameRandom with the specified seed.
+     *
+     * @param seed the seed.
+     */
+    public GameRandom(long seed) {
+        this.state = seed;
+    }
+
+    /**
+     * Returns the next random long.
+     *
+     * @return a uniformly distributed long.
+     */
+    public long nextLong() {
+        long z = (state += GOLDEN_GAMMA);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns a random int between 0 (inclusive) and the bound (exclusive).
+     *
+     * @param bound the upper bound, must be positive.
+     * @return a uniformly distributed int.
+     */
+    public int nextInt(int bound) {
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Returns a random double between 0 (inclusive) and 1 (exclusive).
+     *
+     * @return a uniformly distributed double.
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Returns the internal state, which can be passed back to setState to replay the same sequence.
+     *
+     * @return the state.
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Restores a state returned by getState.
+     *
+     * @param state the state.
+     */
+    public void setState(long state) {
+        this.state = state;
+    }
+}
@@ -0,0 +1,321 @@
+package com.snakegame;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The GameServer hosts many independent games, one Room per TCP connection.
+ * Rooms are spread over a few shards, one per core by default, and every shard ticks all of its rooms
+ * on its own GameLoop, so thousands of rooms share a handful of threads instead of a timer each.
+ * A single network thread accepts connections and reads inputs from all of them; the connection's
+ * key attachment is the only per-connection task, which is cheaper on this JDK than a thread per connection.
+ *
+ * The protocol is binary and big-endian. The client sends INPUT_SIZE bytes per input: the ordinal of the
+ * direction and a timestamp of its choosing. After every tick the server sends UPDATE_SIZE bytes:
+ * the tick, the ordinal of the game status, the points, the head position, the tail length and the
+ * timestamp of the latest input received before the tick, so the client can measure its latency.
+ * The update that ends a game has the GAME_OVER status and the final points; the next one starts a new game.
+ */
+class GameServer implements Runnable {
+    public static final int INPUT_SIZE = 1 + 8;
+    public static final int UPDATE_SIZE = 4 + 1 + 4 + 4 + 4 + 4 + 8;
+
+    private static final int MAX_CATCH_UP = 2;
+    private static final int SAMPLES = 4096;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final Shard[] shards;
+    private final long seed;
+    private final AtomicInteger rooms = new AtomicInteger();
+    private final Thread thread;
+    private volatile boolean stopped;
+    private int joined;
+
+    /**
+     * Creates a new GameServer listening on the given address. Nothing runs until start is called.
+     *
+     * @param address        the address to listen on; port 0 picks a free port.
+     * @param shards         the number of tick threads.
+     * @param ticksPerSecond the tick rate of every room.
+     * @param seed           the seed of the first room; every room after it gets the next one.
+     * @throws IOException if the address cannot be bound.
+     */
+    public GameServer(InetSocketAddress address, int shards, int ticksPerSecond, long seed) throws IOException {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shards);
+        }
+        this.server = ServerSocketChannel.open();
+        this.selector = Selector.open();
+        this.seed = seed;
+        server.bind(address, 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(ticksPerSecond);
+        }
+        this.thread = new Thread(this, "game-server");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts the network thread and the shards.
+     */
+    public void start() {
+        for (Shard shard : shards) {
+            shard.loop.resume();
+        }
+        thread.start();
+    }
+
+    /**
+     * Stops accepting connections, closes every room and stops the threads.
+     */
+    public void stop() {
+        stopped = true;
+        selector.wakeup();
+        for (Shard shard : shards) {
+            shard.loop.stop();
+        }
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port.
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the number of open rooms.
+     *
+     * @return the number of rooms.
+     */
+    public int getRoomCount() {
+        return rooms.get();
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the number of shards.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the time the shards spent ticking rooms, summed over all shards.
+     *
+     * @return the busy time in nanoseconds.
+     */
+    public long getBusyNanos() {
+        long sum = 0;
+        for (Shard shard : shards) {
+            sum += shard.busyNanos;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of times a shard ticked all of its rooms, summed over all shards.
+     *
+     * @return the number of rounds.
+     */
+    public long getRounds() {
+        long sum = 0;
+        for (Shard shard : shards) {
+            sum += shard.loop.getTicks();
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of rounds dropped because a shard fell too far behind, summed over all shards.
+     *
+     * @return the number of skipped rounds.
+     */
+    public long getSkippedRounds() {
+        long sum = 0;
+        for (Shard shard : shards) {
+            sum += shard.loop.getSkippedTicks();
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the durations of the most recent rounds of every shard, sorted.
+     *
+     * @return the round durations in nanoseconds.
+     */
+    public long[] getRoundDurations() {
+        long[] all = new long[0];
+        for (Shard shard : shards) {
+            long[] samples = shard.samples();
+            int from = all.length;
+            all = Arrays.copyOf(all, from + samples.length);
+            System.arraycopy(samples, 0, all, from, samples.length);
+        }
+        Arrays.sort(all);
+        return all;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!stopped) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable() && !((Room) key.attachment()).read()) {
+                        key.cancel();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Game server stopped: " + e.getMessage());
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Accepts the waiting connections and gives each a room on the next shard in turn.
+     *
+     * @throws IOException if the selector fails.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Room room = new Room(seed + joined, channel);
+            channel.register(selector, SelectionKey.OP_READ, room);
+            shards[joined % shards.length].joining.add(room);
+            joined++;
+            rooms.incrementAndGet();
+        }
+    }
+
+    /**
+     * Closes the listening socket and every connection.
+     */
+    private void close() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Room) {
+                ((Room) key.attachment()).close();
+            }
+        }
+        try {
+            selector.close();
+            server.close();
+        } catch (IOException e) {
+            // Nothing left to clean up
+        }
+    }
+
+    /**
+     * A group of rooms ticked together on one thread.
+     */
+    private final class Shard {
+        private final GameLoop loop;
+        private final ConcurrentLinkedQueue<Room> joining = new ConcurrentLinkedQueue<>();
+        private final long[] durations = new long[SAMPLES];
+        private Room[] members = new Room[16];
+        private int count;
+        private volatile long busyNanos;
+
+        /**
+         * Creates a shard with no rooms. Its loop starts with the server.
+         *
+         * @param ticksPerSecond the tick rate of the rooms.
+         */
+        Shard(int ticksPerSecond) {
+            this.loop = new GameLoop(this::tick, ticksPerSecond, MAX_CATCH_UP);
+        }
+
+        /**
+         * Takes in the rooms that joined since the last round, then ticks every room and drops the closed ones.
+         */
+        private void tick() {
+            long start = System.nanoTime();
+
+            Room room;
+            while ((room = joining.poll()) != null) {
+                if (count == members.length) {
+                    members = Arrays.copyOf(members, count * 2);
+                }
+                members[count++] = room;
+            }
+
+            for (int i = 0; i < count; i++) {
+                if (!members[i].tick()) {
+                    members[i--] = members[--count];
+                    members[count] = null;
+                    rooms.decrementAndGet();
+                }
+            }
+
+            long duration = System.nanoTime() - start;
+            synchronized (durations) {
+                durations[(int) (loop.getTicks() % SAMPLES)] = duration;
+            }
+            busyNanos += duration;
+        }
+
+        /**
+         * Returns the durations of the most recent rounds.
+         *
+         * @return the durations in nanoseconds, in no particular order.
+         */
+        private long[] samples() {
+            synchronized (durations) {
+                return Arrays.copyOf(durations, (int) Math.min(loop.getTicks(), SAMPLES));
+            }
+        }
+    }
+
+    /**
+     * Runs a server from the command line until the process is killed.
+     *
+     * @param args the port, the tick rate and the number of shards.
+     * @throws IOException if the port cannot be bound.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+        int ticksPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int shards = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        GameServer server = new GameServer(new InetSocketAddress(port), shards, ticksPerSecond, System.nanoTime());
+        server.start();
+        System.out.printf("listening on port %d, %d shards, %d ticks/s%n", server.getPort(), shards, ticksPerSecond);
+        while (true) {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            System.out.printf("rooms: %d, rounds: %d, skipped: %d%n",
+                    server.getRoomCount(), server.getRounds(), server.getSkippedRounds());
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.snakegame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The GameSnapshot class holds everything about a game that changes while it is played, in flat arrays:
+ * the counters, the state of the random source, the snake and the foods, including the order of the
+ * lists that decide which food moves and is found first. Restoring it into a game created with the same
+ * seed and settings makes that game continue exactly as the captured one would have.
+ * The rocks never change during a game, so they are not part of it.
+ * A snapshot can be captured and restored any number of times, and only allocates when the snake outgrows it.
+ */
+class GameSnapshot {
+    private static final GameStatus[] STATUSES = GameStatus.values();
+    private static final DeathCause[] CAUSES = DeathCause.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private int ticks;
+    private int points;
+    private GameStatus status;
+    private DeathCause deathCause;
+    private long randomState;
+    private Direction direction;
+
+    private long[] segments = new long[16];
+    private int length;
+    private long moves;
+
+    private int foodCount;
+    private int[] foodX = new int[0];
+    private int[] foodY = new int[0];
+    private byte[] foodType = new byte[0];
+    private int[] memberOrder = new int[0];
+    private int[] indexOrder = new int[0];
+
+    /**
+     * Copies the state of a game into this snapshot.
+     *
+     * @param engine the game.
+     */
+    public void capture(GameEngine engine) {
+        ticks = engine.getTicks();
+        points = engine.getPoints();
+        status = engine.getStatus();
+        deathCause = engine.getDeathCause();
+        randomState = engine.getRandom().getState();
+
+        Snake snake = engine.getSnake();
+        direction = snake.getDirection();
+        ensureSnakeCapacity(snake.getTailLength() + 1);
+        length = snake.save(segments);
+        moves = snake.getMoves();
+
+        Food foods = engine.getFoods();
+        ensureFoodCapacity(foods.size());
+        foodCount = foods.size();
+        foods.save(foodX, foodY, foodType, memberOrder, indexOrder);
+    }
+
+    /**
+     * Puts a game back into the state of this snapshot. Restoring into the game the snapshot was captured from,
+     * after it has only moved the snake a few ticks, changes only the cells the snake moved over since.
+     *
+     * @param engine a game created with the same seed and settings as the captured one.
+     * @throws IllegalArgumentException if the game has a different number of foods.
+     */
+    public void restore(GameEngine engine) {
+        Food foods = engine.getFoods();
+        if (foods.size() != foodCount) {
+            throw new IllegalArgumentException("Snapshot has " + foodCount + " foods, the game " + foods.size());
+        }
+        engine.restore(ticks, points, status, deathCause);
+        engine.getRandom().setState(randomState);
+        engine.getSnake().restore(direction, segments, length, moves);
+        foods.restore(foodX, foodY, foodType, memberOrder, indexOrder);
+    }
+
+    /**
+     * Returns the number of bytes write needs.
+     *
+     * @return the size in bytes.
+     */
+    public int getSize() {
+        return 4 + 4 + 1 + 1 + 8 + 1 + 4 + 8 * length + 4 + foodCount * (4 + 4 + 1 + 4 + 4);
+    }
+
+    /**
+     * Writes this snapshot into a buffer.
+     *
+     * @param out the buffer to write to, with getSize bytes left.
+     */
+    public void write(ByteBuffer out) {
+        out.putInt(ticks).putInt(points);
+        out.put((byte) status.ordinal()).put((byte) deathCause.ordinal());
+        out.putLong(randomState);
+        out.put((byte) direction.ordinal());
+        out.putInt(length);
+        // Head first, as replays have always had them
+        for (int i = length - 1; i >= 0; i--) {
+            out.putLong(segments[i]);
+        }
+        out.putInt(foodCount);
+        for (int i = 0; i < foodCount; i++) {
+            out.putInt(foodX[i]).putInt(foodY[i]).put(foodType[i]).putInt(memberOrder[i]).putInt(indexOrder[i]);
+        }
+    }
+
+    /**
+     * Reads a snapshot written by write into this one.
+     *
+     * @param in the buffer to read from.
+     */
+    public void read(ByteBuffer in) {
+        ticks = in.getInt();
+        points = in.getInt();
+        status = STATUSES[in.get()];
+        deathCause = CAUSES[in.get()];
+        randomState = in.getLong();
+        direction = DIRECTIONS[in.get()];
+        length = in.getInt();
+        ensureSnakeCapacity(length);
+        for (int i = length - 1; i >= 0; i--) {
+            segments[i] = in.getLong();
+        }
+        // The moves are not written, so the snake is restored whole
+        moves = -1;
+        int count = in.getInt();
+        ensureFoodCapacity(count);
+        foodCount = count;
+        for (int i = 0; i < count; i++) {
+            foodX[i] = in.getInt();
+            foodY[i] = in.getInt();
+            foodType[i] = in.get();
+            memberOrder[i] = in.getInt();
+            indexOrder[i] = in.getInt();
+        }
+    }
+
+    /**
+     * Returns the number of ticks played when the snapshot was taken.
+     *
+     * @return the number of ticks.
+     */
+    public int getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the points scored when the snapshot was taken.
+     *
+     * @return the points.
+     */
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * Grows the snake array to hold the given number of segments.
+     *
+     * @param capacity the number of segments.
+     */
+    private void ensureSnakeCapacity(int capacity) {
+        if (segments.length < capacity) {
+            segments = new long[Math.max(capacity, segments.length * 2)];
+        }
+    }
+
+    /**
+     * Grows the food arrays to hold the given number of foods.
+     *
+     * @param capacity the number of foods.
+     */
+    private void ensureFoodCapacity(int capacity) {
+        if (foodX.length < capacity) {
+            foodX = new int[capacity];
+            foodY = new int[capacity];
+            foodType = new byte[capacity];
+            memberOrder = new int[capacity];
+            indexOrder = new int[capacity];
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.snakegame;
+
+/**
+ * The GreedyStrategy steers the snake towards the closest food,
+ * never picking a move that would end the game on the next tick if another one is available.
+ */
+class GreedyStrategy implements Strategy {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    @Override
+    public Direction decide(GameEngine engine) {
+        Snake snake = engine.getSnake();
+        Occupancy occupancy = engine.getOccupancy();
+        int headX = snake.getHeadX();
+        int headY = snake.getHeadY();
+
+        // Find the closest food
+        int targetX = headX;
+        int targetY = headY;
+        Food foods = engine.getFoods();
+        int closest = foods.nearest(headX, headY);
+        if (closest >= 0) {
+            targetX = foods.getX(closest);
+            targetY = foods.getY(closest);
+        }
+
+        // Pick the safe move that gets the closest to it
+        Direction best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (Direction d : DIRECTIONS) {
+            if (isReverse(d, snake.getDirection())) {
+                continue;
+            }
+            int x = headX + dx(d);
+            int y = headY + dy(d);
+            if (occupancy.isBlocked(x, y)) {
+                continue;
+            }
+            int distance = Math.abs(targetX - x) + Math.abs(targetY - y);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = d;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Checks if two directions are opposite to each other.
+     *
+     * @param a the first direction.
+     * @param b the second direction.
+     * @return true if the directions are opposite, false otherwise.
+     */
+    private static boolean isReverse(Direction a, Direction b) {
+        return a != b && (a.isX() == b.isX());
+    }
+
+    /**
+     * Returns the horizontal offset of one step in the given direction.
+     *
+     * @param d the direction.
+     * @return the offset in pixels.
+     */
+    private static int dx(Direction d) {
+        return d == Direction.RIGHT ? Occupancy.CELL_SIZE : d == Direction.LEFT ? -Occupancy.CELL_SIZE : 0;
+    }
+
+    /**
+     * Returns the vertical offset of one step in the given direction.
+     *
+     * @param d the direction.
+     * @return the offset in pixels.
+     */
+    private static int dy(Direction d) {
+        return d == Direction.DOWN ? Occupancy.CELL_SIZE : d == Direction.UP ? -Occupancy.CELL_SIZE : 0;
+    }
+}
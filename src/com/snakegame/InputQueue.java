@@ -0,0 +1,97 @@
+package com.snakegame;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The InputQueue class hands turns from the thread reading the keyboard to the thread running the ticks without locks.
+ * It is a bounded ring of turns, each stamped with the time it was pressed: the producer only moves the tail
+ * and the consumer only moves the head, so neither side ever waits for the other and nothing is allocated.
+ *
+ * The consumer takes at most one turn per tick, checked against the direction the snake is moving in
+ * at that tick, so two quick presses between ticks are applied on two ticks instead of one overwriting the other.
+ */
+class InputQueue {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final byte[] directions;
+    private final long[] times;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private long polledTime;
+
+    /**
+     * Creates an empty queue.
+     *
+     * @param capacity the number of turns it holds, a power of two.
+     * @throws IllegalArgumentException if the capacity is not a positive power of two.
+     */
+    public InputQueue(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        directions = new byte[capacity];
+        times = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds a turn. Called by the producer thread only.
+     *
+     * @param direction the direction to turn to.
+     * @param time      when the turn was asked for, from System.nanoTime.
+     * @return whether it was added, false if the queue is full.
+     */
+    public boolean offer(Direction direction, long time) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            return false;
+        }
+        int slot = (int) t & mask;
+        directions[slot] = (byte) direction.ordinal();
+        times[slot] = time;
+        // Publishes the slot along with the new tail
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Takes the oldest turn that changes the given direction, skipping the ones that would not:
+     * going straight on, or reversing. Later turns stay queued for the next ticks. Called by the consumer thread only.
+     *
+     * @param current the direction the snake is moving in.
+     * @return the turn, or null if no queued turn changes the direction.
+     */
+    public Direction poll(Direction current) {
+        long h = head.get();
+        long t = tail.get();
+        while (h < t) {
+            int slot = (int) h & mask;
+            Direction d = DIRECTIONS[directions[slot]];
+            polledTime = times[slot];
+            h++;
+            if (d.isX() != current.isX()) {
+                head.lazySet(h);
+                return d;
+            }
+        }
+        head.lazySet(h);
+        return null;
+    }
+
+    /**
+     * Returns when the turn poll last returned was asked for.
+     *
+     * @return the time, from System.nanoTime.
+     */
+    public long getPolledTime() {
+        return polledTime;
+    }
+
+    /**
+     * Drops every queued turn. Called by the consumer thread only.
+     */
+    public void clear() {
+        head.lazySet(tail.get());
+    }
+}
@@ -0,0 +1,120 @@
+package com.snakegame;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LatencyHistogram counts durations in buckets that double in width with every power of two,
+ * each split into 8 sub-buckets, so any percentile is known to within an eighth of its value
+ * from a fixed 4 KB of counters. Durations are recorded by one thread at a time, such as the loop thread,
+ * with a few bit operations and ordered writes: it takes no lock and allocates nothing,
+ * and any thread may read while it records.
+ */
+class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds, negative ones counting as 0.
+     */
+    public void record(long nanos) {
+        // With a single writer, ordered writes are enough and avoid locked instructions
+        long value = Math.max(0, nanos);
+        int bucket = bucket(value);
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+        total.lazySet(total.get() + value);
+        if (value > max.get()) {
+            max.lazySet(value);
+        }
+        count.lazySet(count.get() + 1);
+    }
+
+    /**
+     * Returns the duration that the given share of the recorded ones do not exceed,
+     * rounded up to the end of its bucket.
+     *
+     * @param share the share, between 0 and 1, such as 0.99 for the 99th percentile.
+     * @return the duration in nanoseconds, 0 if nothing was recorded.
+     */
+    public long percentile(double share) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(share * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     *
+     * @return the count.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the average duration.
+     *
+     * @return the mean in nanoseconds, 0 if nothing was recorded.
+     */
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    /**
+     * Returns the longest duration.
+     *
+     * @return the maximum in nanoseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the bucket of a duration: exact below 8, then 8 to every power of two.
+     *
+     * @param value the duration, not negative.
+     * @return the index of the bucket.
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the highest duration that falls into a bucket.
+     *
+     * @param bucket the index of the bucket.
+     * @return the duration.
+     */
+    private static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
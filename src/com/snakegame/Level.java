@@ -0,0 +1,122 @@
+package com.snakegame;
+
+/**
+ * The Level class is a generated rock layout: a bitset with one bit per cell, row by row,
+ * with every row starting on a new long. Levels never change once generated,
+ * so they can be cached and shared between games and threads.
+ */
+class Level {
+    private final long seed;
+    private final double density;
+    private final int cols;
+    private final int rows;
+    private final int wordsPerRow;
+    private final long[] rocks;
+    private final int rockCount;
+
+    /**
+     * Creates a new Level from a finished rock bitset.
+     *
+     * @param seed        the seed the level was generated from.
+     * @param density     the requested share of cells holding a rock.
+     * @param cols        the number of columns.
+     * @param rows        the number of rows.
+     * @param wordsPerRow the number of longs every row takes.
+     * @param rocks       the rock bitset, which the level takes ownership of.
+     * @param rockCount   the number of rocks.
+     */
+    Level(long seed, double density, int cols, int rows, int wordsPerRow, long[] rocks, int rockCount) {
+        this.seed = seed;
+        this.density = density;
+        this.cols = cols;
+        this.rows = rows;
+        this.wordsPerRow = wordsPerRow;
+        this.rocks = rocks;
+        this.rockCount = rockCount;
+    }
+
+    /**
+     * Checks if there is a rock on a cell.
+     *
+     * @param col the column of the cell.
+     * @param row the row of the cell.
+     * @return true if there is a rock, false otherwise or outside the level.
+     */
+    public boolean isRock(int col, int row) {
+        if (col < 0 || row < 0 || col >= cols || row >= rows) {
+            return false;
+        }
+        return (rocks[row * wordsPerRow + (col >>> 6)] & (1L << col)) != 0;
+    }
+
+    /**
+     * Returns the first rock at or after a cell, going row by row.
+     *
+     * @param cell the index of the cell to start at, row times the number of columns plus column.
+     * @return the index of the rock's cell, or -1 if there are no more rocks.
+     */
+    public long nextRock(long cell) {
+        int row = (int) (cell / cols);
+        int col = (int) (cell % cols);
+        while (row < rows) {
+            int base = row * wordsPerRow;
+            for (int w = col >>> 6; w < wordsPerRow; w++) {
+                long bits = rocks[base + w];
+                if (w == col >>> 6) {
+                    bits &= -1L << col;
+                }
+                if (bits != 0) {
+                    return (long) row * cols + (w << 6) + Long.numberOfTrailingZeros(bits);
+                }
+            }
+            row++;
+            col = 0;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the seed the level was generated from.
+     *
+     * @return the seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the requested share of cells holding a rock.
+     *
+     * @return the density, before unreachable cells were filled.
+     */
+    public double getDensity() {
+        return density;
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return the number of columns.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of rocks, including those filling unreachable pockets.
+     *
+     * @return the number of rocks.
+     */
+    public int getRockCount() {
+        return rockCount;
+    }
+}
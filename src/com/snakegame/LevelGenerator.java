@@ -0,0 +1,283 @@
+package com.snakegame;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The LevelGenerator creates rock layouts from a seed that are always playable.
+ * Rocks are scattered without overlap and kept out of a safe zone around the spawn,
+ * then a flood fill from the spawn finds every cell the snake can reach and the cells
+ * it cannot reach are filled with rock, so no food can ever spawn in a closed-off pocket.
+ * Everything works on bitsets with one bit per cell, a row at a time where possible,
+ * so maps with millions of cells take milliseconds. Recently generated levels are cached.
+ */
+class LevelGenerator {
+    public static final LevelGenerator DEFAULT = new LevelGenerator(16);
+    public static final double MAX_DENSITY = 0.5;
+
+    private static final long MAX_CELLS = 1L << 30;
+    private static final int SAFE_RADIUS = 3;
+    private static final int SAFE_AHEAD = 8;
+
+    private final Map<Key, Level> cache;
+
+    /**
+     * Creates a new LevelGenerator.
+     *
+     * @param cacheSize the number of levels to keep, dropping the least recently used.
+     */
+    public LevelGenerator(int cacheSize) {
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Level> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the level for the given settings, generating it unless it is cached.
+     * Safe to call from several threads; two threads asking for the same new level may both generate it.
+     *
+     * @param seed     the seed of the level.
+     * @param density  the share of cells to put a rock on, at most MAX_DENSITY.
+     * @param cols     the number of columns.
+     * @param rows     the number of rows.
+     * @param spawnCol the column the snake starts in.
+     * @param spawnRow the row the snake starts in.
+     * @return the level.
+     * @throws IllegalArgumentException if the density, the size or the spawn is out of range.
+     */
+    public Level generate(long seed, double density, int cols, int rows, int spawnCol, int spawnRow) {
+        if (!(density >= 0 && density <= MAX_DENSITY)) {
+            throw new IllegalArgumentException("Density must be between 0 and " + MAX_DENSITY + ": " + density);
+        }
+        if (cols <= 0 || rows <= 0 || (long) cols * rows > MAX_CELLS) {
+            throw new IllegalArgumentException("Level size out of range: " + cols + "x" + rows);
+        }
+        if (spawnCol < 0 || spawnRow < 0 || spawnCol >= cols || spawnRow >= rows) {
+            throw new IllegalArgumentException("Spawn outside the level: " + spawnCol + "," + spawnRow);
+        }
+
+        Key key = new Key(seed, density, cols, rows, spawnCol, spawnRow);
+        synchronized (cache) {
+            Level level = cache.get(key);
+            if (level != null) {
+                return level;
+            }
+        }
+
+        // Generate outside the lock, so threads generating different levels do not wait for each other
+        Level level = new Builder(cols, rows).build(seed, density, spawnCol, spawnRow);
+        synchronized (cache) {
+            cache.put(key, level);
+        }
+        return level;
+    }
+
+    /**
+     * The state of a single generation.
+     */
+    private static final class Builder {
+        private final int cols;
+        private final int rows;
+        private final int words;
+        private final long lastMask;
+        private final long[] rock;
+        private final long[] reached;
+        private final int[] stack;
+        private final boolean[] queued;
+        private int stackSize;
+
+        /**
+         * Creates empty bitsets for a level of the given size.
+         *
+         * @param cols the number of columns.
+         * @param rows the number of rows.
+         */
+        Builder(int cols, int rows) {
+            this.cols = cols;
+            this.rows = rows;
+            this.words = (cols + 63) >>> 6;
+            this.lastMask = (cols & 63) == 0 ? -1L : (1L << cols) - 1;
+            this.rock = new long[rows * words];
+            this.reached = new long[rows * words];
+            this.stack = new int[rows];
+            this.queued = new boolean[rows];
+        }
+
+        /**
+         * Scatters the rocks, flood fills from the spawn and fills the unreachable cells.
+         *
+         * @param seed     the seed of the level.
+         * @param density  the share of cells to put a rock on.
+         * @param spawnCol the column the snake starts in.
+         * @param spawnRow the row the snake starts in.
+         * @return the finished level.
+         */
+        Level build(long seed, double density, int spawnCol, int spawnRow) {
+            // The safe zone reaches further to the right, where the snake heads first
+            int safeLeft = Math.max(0, spawnCol - SAFE_RADIUS);
+            int safeRight = Math.min(cols - 1, spawnCol + SAFE_AHEAD);
+            int safeTop = Math.max(0, spawnRow - SAFE_RADIUS);
+            int safeBottom = Math.min(rows - 1, spawnRow + SAFE_RADIUS);
+            long safeCells = (long) (safeRight - safeLeft + 1) * (safeBottom - safeTop + 1);
+            long target = Math.min(Math.round(density * cols * rows), (long) cols * rows - safeCells);
+
+            GameRandom random = new GameRandom(seed);
+            for (long placed = 0; placed < target; ) {
+                int col = random.nextInt(cols);
+                int row = random.nextInt(rows);
+                if (col >= safeLeft && col <= safeRight && row >= safeTop && row <= safeBottom) {
+                    continue;
+                }
+                int i = row * words + (col >>> 6);
+                if ((rock[i] & (1L << col)) == 0) {
+                    rock[i] |= 1L << col;
+                    placed++;
+                }
+            }
+
+            // Fill from the spawn a row at a time, refilling the neighbours of every row that grew
+            reached[spawnRow * words + (spawnCol >>> 6)] = 1L << spawnCol;
+            push(spawnRow);
+            while (stackSize > 0) {
+                int row = stack[--stackSize];
+                queued[row] = false;
+                if (fillRow(row)) {
+                    push(row - 1);
+                    push(row + 1);
+                }
+            }
+
+            // Whatever is neither rock nor reached is a closed-off pocket
+            int rockCount = 0;
+            for (int row = 0; row < rows; row++) {
+                for (int w = 0; w < words; w++) {
+                    int i = row * words + w;
+                    rock[i] |= free(i, w) & ~reached[i];
+                    rockCount += Long.bitCount(rock[i]);
+                }
+            }
+            return new Level(seed, density, cols, rows, words, rock, rockCount);
+        }
+
+        /**
+         * Grows the reached cells of a row along its free runs, starting from the cells reached
+         * above and below it. A run is filled from its seeds a word at a time: adding the seeds
+         * to the free bits carries through the run towards the high bits, and the same on the
+         * reversed word fills it towards the low bits.
+         *
+         * @param row the row.
+         * @return true if any cell of the row was newly reached.
+         */
+        private boolean fillRow(int row) {
+            int base = row * words;
+            boolean grew = false;
+
+            long carry = 0;
+            for (int w = 0; w < words; w++) {
+                int i = base + w;
+                long free = free(i, w);
+                long seeds = reached[i] | carry;
+                if (row > 0) {
+                    seeds |= reached[i - words];
+                }
+                if (row < rows - 1) {
+                    seeds |= reached[i + words];
+                }
+                seeds &= free;
+                long filled = (((free + seeds) ^ free) & free) | seeds;
+                carry = filled >>> 63;
+                grew |= filled != reached[i];
+                reached[i] = filled;
+            }
+
+            carry = 0;
+            for (int w = words - 1; w >= 0; w--) {
+                int i = base + w;
+                long free = Long.reverse(free(i, w));
+                long seeds = (Long.reverse(reached[i]) | carry) & free;
+                long filled = Long.reverse((((free + seeds) ^ free) & free) | seeds);
+                carry = filled & 1;
+                grew |= filled != reached[i];
+                reached[i] = filled;
+            }
+            return grew;
+        }
+
+        /**
+         * Returns the cells of a word that are not rock.
+         *
+         * @param i the index of the word.
+         * @param w the index of the word in its row.
+         * @return a bit for every free cell.
+         */
+        private long free(int i, int w) {
+            return w == words - 1 ? ~rock[i] & lastMask : ~rock[i];
+        }
+
+        /**
+         * Queues a row to be filled, unless it is already queued.
+         *
+         * @param row the row.
+         */
+        private void push(int row) {
+            if (row >= 0 && row < rows && !queued[row]) {
+                queued[row] = true;
+                stack[stackSize++] = row;
+            }
+        }
+    }
+
+    /**
+     * The settings a level is cached by.
+     */
+    private static final class Key {
+        private final long seed;
+        private final double density;
+        private final int cols;
+        private final int rows;
+        private final int spawnCol;
+        private final int spawnRow;
+
+        /**
+         * Creates the key of a level.
+         *
+         * @param seed     the seed of the level.
+         * @param density  the share of cells to put a rock on.
+         * @param cols     the number of columns.
+         * @param rows     the number of rows.
+         * @param spawnCol the column the snake starts in.
+         * @param spawnRow the row the snake starts in.
+         */
+        Key(long seed, double density, int cols, int rows, int spawnCol, int spawnRow) {
+            this.seed = seed;
+            this.density = density;
+            this.cols = cols;
+            this.rows = rows;
+            this.spawnCol = spawnCol;
+            this.spawnRow = spawnRow;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return seed == k.seed && Double.compare(density, k.density) == 0 && cols == k.cols
+                    && rows == k.rows && spawnCol == k.spawnCol && spawnRow == k.spawnRow;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = Long.hashCode(seed);
+            h = 31 * h + Double.hashCode(density);
+            h = 31 * h + cols;
+            h = 31 * h + rows;
+            h = 31 * h + spawnCol;
+            return 31 * h + spawnRow;
+        }
+    }
+}
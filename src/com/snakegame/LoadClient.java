@@ -0,0 +1,277 @@
+package com.snakegame;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * The LoadClient opens many connections to a GameServer and plays every room with random turns
+ * from a single headless thread. Unless given the address of a running server, it starts one on the
+ * loopback interface in the same process, which also lets it report how busy the server was.
+ * It reports the rooms hosted per core, the latency from sending an input to receiving the update
+ * of the tick that applied it, and the bandwidth in both directions.
+ */
+class LoadClient {
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+    private static final long INPUT_INTERVAL_NANOS = 200_000_000L;
+
+    private final Selector selector;
+    private final Connection[] connections;
+    private final GameRandom random;
+    private long[] latencies = new long[1024];
+    private int latencyCount;
+    private long updates;
+    private long bytesIn;
+    private long bytesOut;
+
+    /**
+     * Opens the given number of connections to a server.
+     *
+     * @param address the address of the server.
+     * @param rooms   the number of connections, one room each.
+     * @param seed    the seed of the random turns.
+     * @throws IOException if a connection fails.
+     */
+    public LoadClient(InetSocketAddress address, int rooms, long seed) throws IOException {
+        this.selector = Selector.open();
+        this.random = new GameRandom(seed);
+        this.connections = new Connection[rooms];
+        long now = System.nanoTime();
+        for (int i = 0; i < rooms; i++) {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            // Spread the inputs of the rooms evenly over the interval
+            connections[i] = new Connection(channel, now + INPUT_INTERVAL_NANOS * i / rooms);
+            channel.register(selector, SelectionKey.OP_READ, connections[i]);
+        }
+    }
+
+    /**
+     * Plays every room for the given time.
+     *
+     * @param nanos the time to play for.
+     * @throws IOException if a connection fails.
+     */
+    public void run(long nanos) throws IOException {
+        long end = System.nanoTime() + nanos;
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            for (Connection connection : connections) {
+                if (now >= connection.nextInput) {
+                    connection.nextInput += INPUT_INTERVAL_NANOS;
+                    bytesOut += connection.send(random.nextInt(4), now);
+                }
+            }
+
+            selector.select(1);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                ((Connection) key.attachment()).receive();
+            }
+        }
+    }
+
+    /**
+     * Forgets everything measured so far, such as during a warmup.
+     */
+    public void reset() {
+        latencyCount = 0;
+        updates = 0;
+        bytesIn = 0;
+        bytesOut = 0;
+    }
+
+    /**
+     * Closes every connection.
+     */
+    public void close() {
+        for (Connection connection : connections) {
+            try {
+                connection.channel.close();
+            } catch (IOException e) {
+                // Nothing left to clean up
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // Nothing left to clean up
+        }
+    }
+
+    /**
+     * Records the latency of an input.
+     *
+     * @param nanos the time from sending the input to receiving its update.
+     */
+    private void recordLatency(long nanos) {
+        if (latencyCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencyCount * 2);
+        }
+        latencies[latencyCount++] = nanos;
+    }
+
+    /**
+     * Returns a percentile of sorted values.
+     *
+     * @param sorted the values, sorted.
+     * @param count  the number of values.
+     * @param p      the percentile, between 0 and 1.
+     * @return the value, or 0 if there are none.
+     */
+    private static long percentile(long[] sorted, int count, double p) {
+        if (count == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, rank))];
+    }
+
+    /**
+     * Formats the usual percentiles of sorted nanosecond values in milliseconds.
+     *
+     * @param sorted the values, sorted.
+     * @param count  the number of values.
+     * @return the percentiles.
+     */
+    private static String percentiles(long[] sorted, int count) {
+        return String.format("p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms (%d samples)",
+                percentile(sorted, count, 0.5) / 1e6, percentile(sorted, count, 0.9) / 1e6,
+                percentile(sorted, count, 0.99) / 1e6, percentile(sorted, count, 0.999) / 1e6,
+                percentile(sorted, count, 1) / 1e6, count);
+    }
+
+    /**
+     * One connection and its room, as seen by the client.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(GameServer.UPDATE_SIZE * 64);
+        private final ByteBuffer out = ByteBuffer.allocateDirect(GameServer.INPUT_SIZE);
+        private long nextInput;
+        private long lastStamp;
+
+        /**
+         * Creates a connection to a room, with no input on its way yet.
+         *
+         * @param channel   the connected, non-blocking channel.
+         * @param nextInput when the first input is due, from System.nanoTime.
+         */
+        Connection(SocketChannel channel, long nextInput) {
+            this.channel = channel;
+            this.nextInput = nextInput;
+            out.limit(0);
+        }
+
+        /**
+         * Sends an input, unless the previous one has not gone out yet.
+         *
+         * @param direction the ordinal of the direction.
+         * @param stamp     the time the input was sent.
+         * @return the number of bytes sent.
+         * @throws IOException if the connection fails.
+         */
+        private int send(int direction, long stamp) throws IOException {
+            if (out.hasRemaining()) {
+                return channel.write(out);
+            }
+            out.clear();
+            out.put((byte) direction).putLong(stamp);
+            out.flip();
+            return channel.write(out);
+        }
+
+        /**
+         * Reads the updates that have arrived and records the latency of every input they acknowledge.
+         *
+         * @throws IOException if the connection fails.
+         */
+        private void receive() throws IOException {
+            int n = channel.read(in);
+            if (n < 0) {
+                throw new IOException("Server closed the connection");
+            }
+            bytesIn += n;
+            long now = System.nanoTime();
+
+            in.flip();
+            while (in.remaining() >= GameServer.UPDATE_SIZE) {
+                in.position(in.position() + GameServer.UPDATE_SIZE - 8);
+                long stamp = in.getLong();
+                if (stamp != lastStamp) {
+                    lastStamp = stamp;
+                    recordLatency(now - stamp);
+                }
+                updates++;
+            }
+            in.compact();
+        }
+    }
+
+    /**
+     * Runs a load test from the command line and prints the results.
+     *
+     * @param args the number of rooms, the seconds to measure, the tick rate of the built-in server,
+     *             and optionally the host and port of a running server instead.
+     * @throws IOException if the server or a connection fails.
+     */
+    public static void main(String[] args) throws IOException {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int ticksPerSecond = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        GameServer server = null;
+        InetSocketAddress address;
+        if (args.length > 4) {
+            address = new InetSocketAddress(args[3], Integer.parseInt(args[4]));
+        } else {
+            server = new GameServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), cores, ticksPerSecond, 0);
+            server.start();
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+        }
+
+        LoadClient client = new LoadClient(address, rooms, 0);
+        client.run(WARMUP_NANOS);
+        client.reset();
+
+        long busyBefore = server != null ? server.getBusyNanos() : 0;
+        long roundsBefore = server != null ? server.getRounds() : 0;
+        long skippedBefore = server != null ? server.getSkippedRounds() : 0;
+        long start = System.nanoTime();
+        client.run(seconds * 1_000_000_000L);
+        long elapsed = System.nanoTime() - start;
+        double measured = elapsed / 1e9;
+
+        System.out.printf("rooms:     %d on %d cores, %.1f rooms per core%n", rooms, cores, (double) rooms / cores);
+        if (server != null) {
+            // The client shares the machine, so the capacity is a lower bound
+            double busy = (double) (server.getBusyNanos() - busyBefore) / ((double) elapsed * server.getShardCount());
+            long[] rounds = server.getRoundDurations();
+            System.out.printf("server:    %.1f%% busy, rounds %d, skipped %d, about %.0f rooms per core at full load%n",
+                    busy * 100, server.getRounds() - roundsBefore, server.getSkippedRounds() - skippedBefore,
+                    busy > 0 ? rooms / busy / cores : 0);
+            System.out.println("round:     " + percentiles(rounds, rounds.length));
+        }
+        Arrays.sort(client.latencies, 0, client.latencyCount);
+        System.out.println("latency:   " + percentiles(client.latencies, client.latencyCount));
+        System.out.printf("updates:   %.0f/s, %.1f per room per s%n", client.updates / measured, client.updates / measured / rooms);
+        System.out.printf("bandwidth: down %.1f KB/s (%.0f B/s per room), up %.1f KB/s (%.0f B/s per room)%n",
+                client.bytesIn / measured / 1024, client.bytesIn / measured / rooms,
+                client.bytesOut / measured / 1024, client.bytesOut / measured / rooms);
+
+        client.close();
+        if (server != null) {
+            server.stop();
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package com.snakegame;
 
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import javax.swing.*;
 
 /**
  * The Main class is responsible for starting the Snake game.
  * It creates the main window and initializes the game.
+ * With the snake.activeRendering system property set to true, the game is drawn by an ActiveView
+ * where the display accelerates it, and painted by Swing everywhere else.
  */
 public class Main extends JFrame {
+    private static final boolean ACTIVE_RENDERING = Boolean.getBoolean("snake.activeRendering");
+
     public Main() {
         initUI();
     }
@@ -16,13 +22,29 @@ public class Main extends JFrame {
      * Initializes the user interface of the game.
      */
     private void initUI() {
-        add(new Game());
+        Game game = new Game();
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (ACTIVE_RENDERING && ActiveView.isSupported(gc)) {
+            add(new ActiveView(game, gc));
+        } else {
+            if (ACTIVE_RENDERING) {
+                System.err.println("Active rendering is not accelerated on this display, painting with Swing");
+            }
+            add(game);
+        }
         setTitle("Snake");
         setSize(540, 580);
 
         setLocationRelativeTo(null);
         setResizable(false);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // Exiting stops the game from a shutdown hook, disposing the window stops it here
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                game.stop();
+            }
+        });
     }
 
     /**
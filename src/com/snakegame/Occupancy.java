@@ -0,0 +1,781 @@
+package com.snakegame;
+
+import java.util.Arrays;
+
+/**
+ * The Occupancy class keeps track of what is on every cell of the playing field.
+ * The snake, the rocks and the food update it incrementally as they move, so
+ * collisions are a single lookup and free cells can be picked without retrying.
+ * Coordinates are in pixels and cells are 10 pixels wide.
+ *
+ * The field is split into square chunks of 16 by 16 cells that are only allocated once
+ * something is put on them, and on large maps released again when they are empty, so memory
+ * grows with the populated area rather than with the size of the map. Chunks live in an open-addressing
+ * hash table keyed by their position, and a chunk only allocates the snake and food counts
+ * once a snake or a food enters it, so a chunk holding just rocks stays small.
+ */
+class Occupancy {
+    public static final int CELL_SIZE = 10;
+
+    private static final int CHUNK_SHIFT = 4;
+    private static final int CHUNK_CELLS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_CELLS - 1;
+    private static final int CHUNK_AREA = CHUNK_CELLS * CHUNK_CELLS;
+
+    // Maps up to this many cells pick free cells exactly, larger ones by rejection sampling
+    private static final long EXACT_LIMIT = 1 << 20;
+    private static final int MAX_DIRECTORY_SIZE = 1 << 16;
+    private static final int MAX_ATTEMPTS = 64;
+    private static final int MAX_POOLED_CHUNKS = 16;
+
+    private final int originX;
+    private final int originY;
+    private final int cols;
+    private final int rows;
+    private final int chunkCols;
+    private final int chunkRows;
+    private long usedCount;
+
+    // Small maps look chunks up in a directory with a slot for every chunk, large maps in the hash table
+    private final Chunk[] directory;
+    private int[] keys = new int[16];
+    private Chunk[] chunks = new Chunk[16];
+    private int chunkCount;
+    private final Chunk[] pool = new Chunk[MAX_POOLED_CHUNKS];
+    private int poolSize;
+    private Chunk lastChunk;
+
+    /**
+     * Creates a new Occupancy grid with every cell free.
+     *
+     * @param originX the x-coordinate of the top-left cell.
+     * @param originY the y-coordinate of the top-left cell.
+     * @param width   the width of the playing field.
+     * @param height  the height of the playing field.
+     */
+    public Occupancy(int originX, int originY, int width, int height) {
+        this.originX = originX;
+        this.originY = originY;
+        this.cols = width / CELL_SIZE;
+        this.rows = height / CELL_SIZE;
+        this.chunkCols = (cols + CHUNK_MASK) >> CHUNK_SHIFT;
+        this.chunkRows = (rows + CHUNK_MASK) >> CHUNK_SHIFT;
+        long chunkSlots = (long) chunkCols * chunkRows;
+        this.directory = chunkSlots <= MAX_DIRECTORY_SIZE ? new Chunk[(int) chunkSlots] : null;
+        Arrays.fill(keys, -1);
+    }
+
+    /**
+     * Returns the index of the cell containing the given coordinates.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the index of the cell, or -1 if the coordinates are outside the playing field.
+     */
+    public long index(int x, int y) {
+        int cx = column(x);
+        int cy = row(y);
+        if (cx < 0 || cy < 0 || cx >= cols || cy >= rows) {
+            return -1;
+        }
+        return (long) cy * cols + cx;
+    }
+
+    /**
+     * Returns the x-coordinate of a cell.
+     *
+     * @param index the index of the cell.
+     * @return the x-coordinate of the cell's top-left corner.
+     */
+    public int cellX(long index) {
+        return originX + (int) (index % cols) * CELL_SIZE;
+    }
+
+    /**
+     * Returns the y-coordinate of a cell.
+     *
+     * @param index the index of the cell.
+     * @return the y-coordinate of the cell's top-left corner.
+     */
+    public int cellY(long index) {
+        return originY + (int) (index / cols) * CELL_SIZE;
+    }
+
+    /**
+     * Returns the x-coordinate of the top-left cell.
+     *
+     * @return the x-coordinate of the playing field.
+     */
+    public int getOriginX() {
+        return originX;
+    }
+
+    /**
+     * Returns the y-coordinate of the top-left cell.
+     *
+     * @return the y-coordinate of the playing field.
+     */
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * Returns the width of the playing field.
+     *
+     * @return the width in pixels.
+     */
+    public int getWidth() {
+        return cols * CELL_SIZE;
+    }
+
+    /**
+     * Returns the height of the playing field.
+     *
+     * @return the height in pixels.
+     */
+    public int getHeight() {
+        return rows * CELL_SIZE;
+    }
+
+    /**
+     * Returns the number of cells in the playing field.
+     *
+     * @return the number of cells.
+     */
+    public long getCellCount() {
+        return (long) cols * rows;
+    }
+
+    /**
+     * Returns the number of chunks currently allocated.
+     *
+     * @return the number of chunks.
+     */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * Checks if the given coordinates are inside the playing field.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return true if the coordinates are inside, false otherwise.
+     */
+    public boolean contains(int x, int y) {
+        return index(x, y) >= 0;
+    }
+
+    /**
+     * Marks a snake segment on the cell at the given coordinates.
+     * Segments outside the playing field are ignored.
+     *
+     * @param x the x-coordinate of the segment.
+     * @param y the y-coordinate of the segment.
+     */
+    public void addSnake(int x, int y) {
+        int cx = column(x);
+        int cy = row(y);
+        Chunk chunk = chunk(cx, cy, true);
+        if (chunk != null) {
+            int i = cell(cx, cy);
+            if (chunk.snake == null) {
+                chunk.snake = new byte[CHUNK_AREA];
+            }
+            chunk.snake[i]++;
+            updateFree(chunk, i);
+        }
+    }
+
+    /**
+     * Removes a snake segment from the cell at the given coordinates.
+     *
+     * @param x the x-coordinate of the segment.
+     * @param y the y-coordinate of the segment.
+     */
+    public void removeSnake(int x, int y) {
+        int cx = column(x);
+        int cy = row(y);
+        Chunk chunk = chunk(cx, cy, false);
+        if (chunk != null && chunk.snake != null) {
+            int i = cell(cx, cy);
+            if (chunk.snake[i] > 0) {
+                chunk.snake[i]--;
+                updateFree(chunk, i);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of snake segments on the cell at the given coordinates.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the number of segments, 0 outside the playing field.
+     */
+    public int snakeAt(int x, int y) {
+        int cx = column(x);
+        int cy = row(y);
+        Chunk chunk = chunk(cx, cy, false);
+        return chunk != null && chunk.snake != null ? chunk.snake[cell(cx, cy)] : 0;
+    }
+
+    /**
+     * Removes every snake segment from the grid.
+     */
+    public void clearSnake() {
+        for (Chunk chunk : allocated()) {
+            if (chunk == null || chunk.snake == null) {
+                continue;
+            }
+            for (int i = 0; i < CHUNK_AREA; i++) {
+                if (chunk.snake[i] != 0) {
+                    chunk.snake[i] = 0;
+                    chunk.updateFree(i);
+                }
+            }
+        }
+        recount();
+    }
+
+    /**
+     * Checks if moving onto the cell at the given coordinates ends the game,
+     * because it is outside the playing field or holds a rock or a snake segment.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return true if the cell is blocked, false otherwise.
+     */
+    public boolean isBlocked(int x, int y) {
+        int cx = column(x);
+        int cy = row(y);
+        if (cx < 0 || cy < 0 || cx >= cols || cy >= rows) {
+            return true;
+        }
+        Chunk chunk = chunk(cx, cy, false);
+        if (chunk == null) {
+            return false;
+        }
+        int i = cell(cx, cy);
+        return chunk.hasRock(i) || (chunk.snake != null && chunk.snake[i] > 0);
+    }
+
+    /**
+     * Marks a rock on the cell at the given coordinates.
+     *
+     * @param x the x-coordinate of the rock.
+     * @param y the y-coordinate of the rock.
+     */
+    public void addRock(int x, int y) {
+        int cx = column(x);
+        int cy = row(y);
+        Chunk chunk = chunk(cx, cy, true);
+        if (chunk != null) {
+            int i = cell(cx, cy);
+            chunk.rock[i >>> 6] |= 1L << i;
+            updateFree(chunk, i);
+        }
+    }
+
+    /**
+     * Checks if there is a rock on the cell at the given coordinates.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return true if there is a rock, false otherwise.
+     */
+    public boolean hasRock(int x, int y) {
+        int cx = column(x);
+        int cy = row(y);
+        Chunk chunk = chunk(cx, cy, false);
+        return chunk != null && chunk.hasRock(cell(cx, cy));
+    }
+
+    /**
+     * Marks a food item on the cell at the given coordinates.
+     *
+     * @param x the x-coordinate of the food.
+     * @param y the y-coordinate of the food.
+     */
+    public void addFood(int x, int y) {
+        int cx = column(x);
+        int cy = row(y);
+        Chunk chunk = chunk(cx, cy, true);
+        if (chunk != null) {
+            int i = cell(cx, cy);
+            if (chunk.food == null) {
+                chunk.food = new short[CHUNK_AREA];
+            }
+            chunk.food[i]++;
+            updateFree(chunk, i);
+        }
+    }
+
+    /**
+     * Removes a food item from the cell at the given coordinates.
+     *
+     * @param x the x-coordinate of the food.
+     * @param y the y-coordinate of the food.
+     */
+    public void removeFood(int x, int y) {
+        int cx = column(x);
+        int cy = row(y);
+        Chunk chunk = chunk(cx, cy, false);
+        if (chunk != null && chunk.food != null) {
+            int i = cell(cx, cy);
+            if (chunk.food[i] > 0) {
+                chunk.food[i]--;
+                updateFree(chunk, i);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of food items on the cell at the given coordinates.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the number of food items, 0 outside the playing field.
+     */
+    public int foodAt(int x, int y) {
+        int cx = column(x);
+        int cy = row(y);
+        Chunk chunk = chunk(cx, cy, false);
+        return chunk != null && chunk.food != null ? chunk.food[cell(cx, cy)] : 0;
+    }
+
+    /**
+     * Returns the number of free cells.
+     *
+     * @return the number of cells without snake, rock or food.
+     */
+    public long getFreeCount() {
+        return getCellCount() - usedCount;
+    }
+
+    /**
+     * Returns the n-th free cell in index order.
+     * Takes time proportional to the number of chunks of the map.
+     *
+     * @param n the rank of the free cell, between 0 and the free count.
+     * @return the index of the cell, or -1 if there are not enough free cells.
+     */
+    public long freeCell(long n) {
+        if (n < 0 || n >= getFreeCount()) {
+            return -1;
+        }
+        for (int chunkRow = 0; chunkRow < chunkRows; chunkRow++) {
+            // Skip whole rows of chunks using their free counts
+            long rowFree = 0;
+            for (int chunkCol = 0; chunkCol < chunkCols; chunkCol++) {
+                Chunk chunk = findChunk(chunkRow * chunkCols + chunkCol);
+                rowFree += chunk != null ? chunk.freeCount : chunkWidth(chunkCol) * chunkHeight(chunkRow);
+            }
+            if (n >= rowFree) {
+                n -= rowFree;
+                continue;
+            }
+
+            for (int r = 0; r < chunkHeight(chunkRow); r++) {
+                for (int chunkCol = 0; chunkCol < chunkCols; chunkCol++) {
+                    Chunk chunk = findChunk(chunkRow * chunkCols + chunkCol);
+                    long bits = chunk != null ? chunk.freeRow(r) : (1L << chunkWidth(chunkCol)) - 1;
+                    int count = Long.bitCount(bits);
+                    if (n >= count) {
+                        n -= count;
+                        continue;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        bits &= bits - 1;
+                    }
+                    int cx = (chunkCol << CHUNK_SHIFT) + Long.numberOfTrailingZeros(bits);
+                    int cy = (chunkRow << CHUNK_SHIFT) + r;
+                    return (long) cy * cols + cx;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a random free cell. Small maps pick exactly among the free cells;
+     * large maps, which are mostly empty, try random cells until one is free.
+     *
+     * @param random the random source to pick with.
+     * @return the index of the cell, or -1 if no free cell was found.
+     */
+    public long randomFreeCell(GameRandom random) {
+        long freeCount = getFreeCount();
+        if (freeCount == 0) {
+            return -1;
+        }
+        if (getCellCount() <= EXACT_LIMIT) {
+            return freeCell(random.nextInt((int) freeCount));
+        }
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            int cx = random.nextInt(cols);
+            int cy = random.nextInt(rows);
+            int x = originX + cx * CELL_SIZE;
+            int y = originY + cy * CELL_SIZE;
+            if (snakeAt(x, y) == 0 && !hasRock(x, y) && foodAt(x, y) == 0) {
+                return (long) cy * cols + cx;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a random cell, free or not.
+     *
+     * @param random the random source to pick with.
+     * @return the index of the cell.
+     */
+    public long randomCell(GameRandom random) {
+        return (long) random.nextInt(rows) * cols + random.nextInt(cols);
+    }
+
+    /**
+     * Returns the column of the cell containing the given x-coordinate.
+     *
+     * @param x the x-coordinate.
+     * @return the column, which may be outside the field, and is -1 for anything left of it.
+     */
+    private int column(int x) {
+        int dx = x - originX;
+        return dx >= 0 ? dx / CELL_SIZE : -1;
+    }
+
+    /**
+     * Returns the row of the cell containing the given y-coordinate.
+     *
+     * @param y the y-coordinate.
+     * @return the row, which may be outside the field, and is -1 for anything above it.
+     */
+    private int row(int y) {
+        int dy = y - originY;
+        return dy >= 0 ? dy / CELL_SIZE : -1;
+    }
+
+    /**
+     * Returns the index of a cell inside its chunk.
+     *
+     * @param cx the column of the cell.
+     * @param cy the row of the cell.
+     * @return the index of the cell in its chunk.
+     */
+    private static int cell(int cx, int cy) {
+        return ((cy & CHUNK_MASK) << CHUNK_SHIFT) | (cx & CHUNK_MASK);
+    }
+
+    /**
+     * Returns the chunk containing a cell.
+     *
+     * @param cx     the column of the cell.
+     * @param cy     the row of the cell.
+     * @param create whether to allocate the chunk if it does not exist yet.
+     * @return the chunk, or null if the cell is outside the playing field or the chunk does not exist.
+     */
+    private Chunk chunk(int cx, int cy, boolean create) {
+        if (cx < 0 || cy < 0 || cx >= cols || cy >= rows) {
+            return null;
+        }
+
+        int key = (cy >> CHUNK_SHIFT) * chunkCols + (cx >> CHUNK_SHIFT);
+        Chunk chunk;
+        if (directory != null) {
+            chunk = directory[key];
+        } else {
+            // Most lookups in a row hit the same chunk, which saves probing the hash table
+            chunk = lastChunk;
+            if (chunk == null || chunk.key != key) {
+                chunk = findChunk(key);
+                lastChunk = chunk;
+            }
+        }
+        if (chunk == null && create) {
+            chunk = createChunk(key);
+        }
+        return chunk;
+    }
+
+    /**
+     * Looks up a chunk in the hash table.
+     *
+     * @param key the position of the chunk.
+     * @return the chunk, or null if it is not allocated.
+     */
+    private Chunk findChunk(int key) {
+        if (directory != null) {
+            return directory[key];
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; keys[slot] >= 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return chunks[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Allocates a chunk, reusing a released one if possible, and adds it to the hash table.
+     *
+     * @param key the position of the chunk.
+     * @return the new chunk.
+     */
+    private Chunk createChunk(int key) {
+        if (directory == null && 2 * (chunkCount + 1) > keys.length) {
+            resize(keys.length * 2);
+        }
+
+        Chunk chunk = poolSize > 0 ? pool[--poolSize] : new Chunk();
+        int chunkCol = key % chunkCols;
+        int chunkRow = key / chunkCols;
+        chunk.reset(key, chunkWidth(chunkCol), chunkHeight(chunkRow));
+        insert(key, chunk);
+        chunkCount++;
+        return chunk;
+    }
+
+    /**
+     * Removes an empty chunk from the lookup and keeps it for reuse.
+     *
+     * @param chunk the chunk to release.
+     */
+    private void releaseChunk(Chunk chunk) {
+        if (directory != null) {
+            directory[chunk.key] = null;
+        } else {
+            removeFromTable(chunk.key);
+        }
+        chunkCount--;
+
+        if (lastChunk == chunk) {
+            lastChunk = null;
+        }
+        if (poolSize < pool.length) {
+            pool[poolSize++] = chunk;
+        }
+    }
+
+    /**
+     * Removes a chunk from the hash table.
+     * Later entries of the same probe run are shifted back, so lookups never need tombstones.
+     *
+     * @param key the position of the chunk.
+     */
+    private void removeFromTable(int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] >= 0; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            // Move the entry into the hole if its home slot is not between the hole and its slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                chunks[hole] = chunks[next];
+                hole = next;
+            }
+        }
+        keys[hole] = -1;
+        chunks[hole] = null;
+    }
+
+    /**
+     * Puts a chunk into the first empty slot of its probe run.
+     *
+     * @param key   the position of the chunk.
+     * @param chunk the chunk.
+     */
+    private void insert(int key, Chunk chunk) {
+        if (directory != null) {
+            directory[key] = chunk;
+            return;
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        chunks[slot] = chunk;
+    }
+
+    /**
+     * Grows the hash table and puts every chunk back in.
+     *
+     * @param capacity the new number of slots, a power of two.
+     */
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Chunk[] oldChunks = chunks;
+        keys = new int[capacity];
+        chunks = new Chunk[capacity];
+        Arrays.fill(keys, -1);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] >= 0) {
+                insert(oldKeys[slot], oldChunks[slot]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of columns of a chunk that are inside the field.
+     *
+     * @param chunkCol the column of the chunk.
+     * @return the number of columns, 16 except for the last chunk of a row.
+     */
+    private int chunkWidth(int chunkCol) {
+        return Math.min(CHUNK_CELLS, cols - (chunkCol << CHUNK_SHIFT));
+    }
+
+    /**
+     * Returns the number of rows of a chunk that are inside the field.
+     *
+     * @param chunkRow the row of the chunk.
+     * @return the number of rows, 16 except for the last chunk of a column.
+     */
+    private int chunkHeight(int chunkRow) {
+        return Math.min(CHUNK_CELLS, rows - (chunkRow << CHUNK_SHIFT));
+    }
+
+    /**
+     * Spreads the chunk positions over the hash table.
+     *
+     * @param key the position of a chunk.
+     * @return the hash of the position.
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Updates the free set after the contents of a cell changed, and releases the chunk once it is empty.
+     * Chunks of small maps are kept, as they cost little and the snake keeps coming back to them.
+     *
+     * @param chunk the chunk of the cell.
+     * @param i     the index of the cell in the chunk.
+     */
+    private void updateFree(Chunk chunk, int i) {
+        usedCount += chunk.updateFree(i);
+        if (chunk.usedCount == 0 && directory == null) {
+            releaseChunk(chunk);
+        }
+    }
+
+    /**
+     * Returns the array holding the allocated chunks, with null for the empty slots.
+     *
+     * @return the directory or the hash table.
+     */
+    private Chunk[] allocated() {
+        return directory != null ? directory : chunks;
+    }
+
+    /**
+     * Recounts the used cells and releases the empty chunks after a bulk change.
+     */
+    private void recount() {
+        Chunk[] all = allocated();
+        int slot = 0;
+        while (slot < all.length) {
+            Chunk chunk = all[slot];
+            if (chunk != null && chunk.usedCount == 0 && directory == null) {
+                // Shifting back may move a later chunk into this slot, so look at it again
+                releaseChunk(chunk);
+            } else {
+                slot++;
+            }
+        }
+
+        usedCount = 0;
+        for (Chunk chunk : allocated()) {
+            if (chunk != null) {
+                usedCount += chunk.usedCount;
+            }
+        }
+    }
+
+    /**
+     * A square block of cells. Cells are numbered row by row, 16 to a row,
+     * so the free set and the rocks fit in four longs each.
+     */
+    private final class Chunk {
+        final long[] free = new long[CHUNK_AREA / 64];
+        final long[] rock = new long[CHUNK_AREA / 64];
+        byte[] snake;
+        short[] food;
+        int key;
+        int freeCount;
+        int usedCount;
+
+        /**
+         * Prepares an empty chunk for the given position, marking the cells inside the field as free.
+         *
+         * @param key    the position of the chunk.
+         * @param width  the number of columns inside the field.
+         * @param height the number of rows inside the field.
+         */
+        void reset(int key, int width, int height) {
+            this.key = key;
+            Arrays.fill(free, 0);
+            long row = (1L << width) - 1;
+            for (int r = 0; r < height; r++) {
+                free[r >>> 2] |= row << ((r & 3) << CHUNK_SHIFT);
+            }
+            freeCount = width * height;
+            usedCount = 0;
+        }
+
+        /**
+         * Checks if there is a rock on a cell.
+         *
+         * @param i the index of the cell in the chunk.
+         * @return true if there is a rock, false otherwise.
+         */
+        boolean hasRock(int i) {
+            return (rock[i >>> 6] & (1L << i)) != 0;
+        }
+
+        /**
+         * Returns the free cells of one row of this chunk.
+         *
+         * @param r the row in the chunk.
+         * @return a bit for every free cell, the first column in the lowest bit.
+         */
+        long freeRow(int r) {
+            return (free[r >>> 2] >>> ((r & 3) << CHUNK_SHIFT)) & ((1L << CHUNK_CELLS) - 1);
+        }
+
+        /**
+         * Updates the free set after the contents of a cell changed.
+         *
+         * @param i the index of the cell in the chunk.
+         * @return the change in the number of used cells: 1, -1 or 0.
+         */
+        int updateFree(int i) {
+            long bit = 1L << i;
+            int w = i >>> 6;
+            boolean wasFree = (free[w] & bit) != 0;
+            boolean isFree = (snake == null || snake[i] == 0) && !hasRock(i) && (food == null || food[i] == 0);
+
+            if (wasFree && !isFree) {
+                free[w] &= ~bit;
+                freeCount--;
+                usedCount++;
+                return 1;
+            } else if (!wasFree && isFree) {
+                free[w] |= bit;
+                freeCount++;
+                usedCount--;
+                return -1;
+            }
+            return 0;
+        }
+    }
+}
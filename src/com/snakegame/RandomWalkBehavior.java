@@ -0,0 +1,39 @@
+package com.snakegame;
+
+/**
+ * The RandomWalkBehavior moves foods chaotically: every tick a food stays or takes one step
+ * in a random direction, bouncing back when the step would leave the field.
+ */
+class RandomWalkBehavior implements FoodBehavior {
+    private static final int STEP = Occupancy.CELL_SIZE;
+
+    // Stay, right, left, down, up
+    private static final int[] MOVE_X = {0, STEP, -STEP, 0, 0};
+    private static final int[] MOVE_Y = {0, 0, 0, STEP, -STEP};
+
+    @Override
+    public void update(Food food, int[] members, int count, GameEngine engine) {
+        GameRandom random = engine.getRandom();
+        int minX = food.getMinX();
+        int minY = food.getMinY();
+        int maxX = food.getMaxX();
+        int maxY = food.getMaxY();
+
+        for (int k = 0; k < count; k++) {
+            int i = members[k];
+            int move = random.nextInt(MOVE_X.length);
+            int dx = MOVE_X[move];
+            int dy = MOVE_Y[move];
+
+            int x = food.getX(i) + dx;
+            int y = food.getY(i) + dy;
+            if (x < minX || x > maxX) {
+                dx = -dx;
+            }
+            if (y < minY || y > maxY) {
+                dy = -dy;
+            }
+            food.move(i, dx, dy);
+        }
+    }
+}
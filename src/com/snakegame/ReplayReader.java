@@ -0,0 +1,274 @@
+package com.snakegame;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The ReplayReader plays back a file written by a ReplayRecorder. The file is memory-mapped and
+ * scanned once on open to find its keyframes; after that, stepping reads one byte per tick and
+ * runs the game at full simulation speed. Seeking restores the last keyframe at or before the
+ * target and simulates the few ticks from there, so any tick is reached in well under the time
+ * of a keyframe interval's worth of ticks.
+ */
+class ReplayReader implements AutoCloseable {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final FoodType[] TYPES = FoodType.values();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+    private final long seed;
+    private final GameConfig config;
+    private final int keyframeInterval;
+    private final GameEngine engine;
+    private final GameSnapshot snapshot = new GameSnapshot();
+    private final int start;
+
+    // Where every keyframe is in the file, and the tick it comes before
+    private long[] keyframeTick = new long[16];
+    private int[] keyframeOffset = new int[16];
+    private int keyframeCount;
+    private long tickCount;
+
+    private int position;
+    private long tick;
+
+    /**
+     * Opens a replay and puts its game at tick 0.
+     *
+     * @param path the replay file.
+     * @throws IOException              if the file cannot be read.
+     * @throws IllegalArgumentException if the file is not a replay.
+     */
+    public ReplayReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        if (data.remaining() < 6 || data.getInt() != ReplayRecorder.MAGIC) {
+            channel.close();
+            throw new IllegalArgumentException("Not a replay: " + path);
+        }
+        short version = data.getShort();
+        if (version != ReplayRecorder.VERSION) {
+            channel.close();
+            throw new IllegalArgumentException("Unsupported replay version: " + version);
+        }
+        seed = data.getLong();
+        config = new GameConfig()
+                .setSize(data.getInt(), data.getInt())
+                .setNumRocks(data.getInt())
+                .setRockDensity(data.getDouble())
+                .setNumFoods(data.getInt());
+        int foodType = data.get();
+        config.setFoodType(foodType < 0 ? null : TYPES[foodType]);
+        for (FoodType type : TYPES) {
+            config.setBehavior(type, ReplayRecorder.BEHAVIORS[data.get()]);
+        }
+        keyframeInterval = data.getInt();
+        start = data.position();
+
+        index();
+        engine = new GameEngine(seed, config);
+        position = start;
+    }
+
+    /**
+     * Scans the file for keyframes and counts its ticks. A record cut off at the end of the file,
+     * as left by a recorder that did not close, ends the replay.
+     */
+    private void index() {
+        int limit = data.limit();
+        int p = start;
+        while (p < limit) {
+            if (data.get(p) == ReplayRecorder.KEYFRAME) {
+                if (p + 5 > limit || p + 5 + data.getInt(p + 1) > limit) {
+                    break;
+                }
+                if (keyframeCount == keyframeTick.length) {
+                    keyframeTick = Arrays.copyOf(keyframeTick, keyframeCount * 2);
+                    keyframeOffset = Arrays.copyOf(keyframeOffset, keyframeCount * 2);
+                }
+                keyframeTick[keyframeCount] = tickCount;
+                keyframeOffset[keyframeCount++] = p;
+                p += 5 + data.getInt(p + 1);
+            } else {
+                tickCount++;
+                p++;
+            }
+        }
+        data.limit(p);
+    }
+
+    /**
+     * Plays the next tick.
+     *
+     * @return false if the replay has ended, true otherwise.
+     */
+    public boolean step() {
+        if (position < data.limit() && data.get(position) == ReplayRecorder.KEYFRAME) {
+            position += 5 + data.getInt(position + 1);
+        }
+        if (position >= data.limit()) {
+            return false;
+        }
+
+        int code = data.get(position++);
+        if ((code & ReplayRecorder.RESET) != 0) {
+            engine.reset();
+        } else if ((code & ReplayRecorder.START) != 0) {
+            engine.setStatus(GameStatus.RUNNING);
+        }
+        int input = code & ReplayRecorder.INPUT_MASK;
+        engine.step(input == 0 ? null : DIRECTIONS[input - 1]);
+        tick++;
+        return true;
+    }
+
+    /**
+     * Plays up to the given number of ticks as fast as possible.
+     *
+     * @param ticks the number of ticks.
+     * @return the number of ticks played, fewer if the replay ended.
+     */
+    public long fastForward(long ticks) {
+        long played = 0;
+        while (played < ticks && step()) {
+            played++;
+        }
+        return played;
+    }
+
+    /**
+     * Puts the game into its state after the given number of ticks.
+     *
+     * @param target the tick, between 0 and getTickCount.
+     * @throws IllegalArgumentException if the tick is out of range.
+     */
+    public void seek(long target) {
+        if (target < 0 || target > tickCount) {
+            throw new IllegalArgumentException("Tick out of range: " + target + " of " + tickCount);
+        }
+
+        // Restore the last keyframe before the target, unless playing on from here is shorter
+        int k = Arrays.binarySearch(keyframeTick, 0, keyframeCount, target);
+        if (k < 0) {
+            k = -k - 2;
+        }
+        if (k >= 0 && (target < tick || keyframeTick[k] > tick)) {
+            int offset = keyframeOffset[k];
+            snapshot.read(data.slice(offset + 5, data.getInt(offset + 1)));
+            snapshot.restore(engine);
+            tick = keyframeTick[k];
+            position = offset;
+        }
+        fastForward(target - tick);
+    }
+
+    /**
+     * Returns the game being played back.
+     *
+     * @return the game.
+     */
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Returns the number of ticks played so far.
+     *
+     * @return the current tick.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns the number of ticks in the replay.
+     *
+     * @return the number of ticks.
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Returns the number of keyframes in the replay.
+     *
+     * @return the number of keyframes.
+     */
+    public int getKeyframeCount() {
+        return keyframeCount;
+    }
+
+    /**
+     * Returns the number of ticks from one keyframe to the next.
+     *
+     * @return the keyframe interval.
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Returns the seed the game was created with.
+     *
+     * @return the seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Closes the file. The mapping stays valid until it is garbage collected.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Plays a replay from the command line: prints the score of every game in it, checks the time
+     * of a full fast-forward and of seeking to random ticks.
+     *
+     * @param args the replay file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: ReplayReader <file>");
+            return;
+        }
+        try (ReplayReader reader = new ReplayReader(Path.of(args[0]))) {
+            System.out.printf("seed %d, %d ticks, %d keyframes every %d ticks%n", reader.getSeed(),
+                    reader.getTickCount(), reader.getKeyframeCount(), reader.getKeyframeInterval());
+
+            GameEngine engine = reader.getEngine();
+            int games = 0;
+            long start = System.nanoTime();
+            GameStatus before = engine.getStatus();
+            while (reader.step()) {
+                if (engine.getStatus() == GameStatus.GAME_OVER && before != GameStatus.GAME_OVER) {
+                    games++;
+                    System.out.printf("game %d: %d points, %d ticks, %s%n",
+                            games, engine.getPoints(), engine.getTicks(), engine.getDeathCause());
+                }
+                before = engine.getStatus();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("fast-forward: %.3f s, %.0f ticks/s%n", seconds, reader.getTickCount() / seconds);
+
+            GameRandom random = new GameRandom(1);
+            int seeks = 100;
+            start = System.nanoTime();
+            for (int i = 0; i < seeks; i++) {
+                reader.seek((long) (random.nextDouble() * reader.getTickCount()));
+            }
+            System.out.printf("seek: %.3f ms on average%n", (System.nanoTime() - start) / 1e6 / seeks);
+        }
+    }
+}
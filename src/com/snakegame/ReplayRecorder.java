@@ -0,0 +1,289 @@
+package com.snakegame;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ReplayRecorder writes a game session to an append-only file: a header with the seed and the settings,
+ * then one byte per tick with the input and whether the game was reset or started before it.
+ * Replaying those bytes against a game created from the header repeats the session exactly.
+ * Every keyframeInterval ticks a snapshot of the whole game is written before the tick's byte,
+ * so a ReplayReader can jump close to any tick instead of simulating from the start.
+ *
+ * Ticks are recorded into a buffer, which is handed to a writer thread when full, on flush and on close,
+ * so the thread recording never waits for the disk unless the writer is still busy with the previous buffer.
+ * Whatever has not been handed over is lost if the process dies without closing the recorder.
+ * Only one thread may record, flush and close.
+ */
+class ReplayRecorder implements AutoCloseable {
+    static final int MAGIC = 0x534E4B52;
+    static final short VERSION = 1;
+
+    // A tick is a byte below KEYFRAME: the input in the lowest bits, then the flags
+    static final int INPUT_MASK = 7;
+    static final int RESET = 1 << 3;
+    static final int START = 1 << 4;
+    static final byte KEYFRAME = (byte) 0x80;
+
+    // Only the built-in behaviors can be recorded, by their position here
+    static final FoodBehavior[] BEHAVIORS = {
+            FoodBehavior.STATIC, FoodBehavior.RANDOM_WALK, FoodBehavior.FLEE, FoodBehavior.CHASE
+    };
+
+    private static final FoodType[] TYPES = FoodType.values();
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final Thread writer;
+    private final GameSnapshot snapshot = new GameSnapshot();
+    private final int keyframeInterval;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long ticks;
+
+    // The recording thread fills buffer and hands it over as full; the writer gives it back as spare once written.
+    // The writer waits for work, the recording thread for a spare buffer.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Condition progress = lock.newCondition();
+    private ByteBuffer full;
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Creates a new file and writes the header of a game to it. The game must not have been played yet.
+     *
+     * @param path             the file to create.
+     * @param engine           the game to record.
+     * @param keyframeInterval the number of ticks from one snapshot to the next.
+     * @throws IOException              if the file exists or cannot be written.
+     * @throws IllegalArgumentException if the game uses a behavior that is not built in.
+     */
+    public ReplayRecorder(Path path, GameEngine engine, int keyframeInterval) throws IOException {
+        if (keyframeInterval <= 0) {
+            throw new IllegalArgumentException("Keyframe interval must be positive: " + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+
+        GameConfig config = engine.getConfig();
+        buffer.putInt(MAGIC).putShort(VERSION);
+        buffer.putLong(engine.getSeed());
+        buffer.putInt(config.getWidth()).putInt(config.getHeight());
+        buffer.putInt(config.getNumRocks()).putDouble(config.getRockDensity());
+        buffer.putInt(config.getNumFoods());
+        buffer.put((byte) (config.getFoodType() == null ? -1 : config.getFoodType().ordinal()));
+        for (FoodType type : TYPES) {
+            buffer.put((byte) behaviorId(config.getBehavior(type)));
+        }
+        buffer.putInt(keyframeInterval);
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        writer = new Thread(this::write, "replay-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records one tick. Call it at the start of the tick, before the game is touched.
+     *
+     * @param engine the game being recorded.
+     * @param reset  whether the game is reset before the step.
+     * @param start  whether the game is started before the step.
+     * @param input  the direction passed to the step, or null.
+     * @throws IOException if the file cannot be written.
+     */
+    public void record(GameEngine engine, boolean reset, boolean start, Direction input) throws IOException {
+        if (ticks % keyframeInterval == 0) {
+            snapshot.capture(engine);
+            int size = 1 + 4 + snapshot.getSize();
+            ensureRemaining(size);
+            buffer.put(KEYFRAME).putInt(snapshot.getSize());
+            snapshot.write(buffer);
+        }
+
+        ensureRemaining(1);
+        int code = input == null ? 0 : input.ordinal() + 1;
+        buffer.put((byte) (code | (reset ? RESET : 0) | (start ? START : 0)));
+        ticks++;
+    }
+
+    /**
+     * Hands everything recorded so far to the writer thread, without waiting for it to be written.
+     *
+     * @throws IOException if the writer failed, or the thread was interrupted waiting for it.
+     */
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            while (spare == null && failure == null && writer.isAlive()) {
+                awaitWriter();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (spare == null) {
+                throw new IOException("Replay recorder is closed");
+            }
+            if (buffer.position() > 0) {
+                full = buffer.flip();
+                buffer = spare;
+                spare = null;
+                work.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the writer to give a buffer back. Must be called holding the lock.
+     *
+     * @throws InterruptedIOException if the thread was interrupted.
+     */
+    private void awaitWriter() throws InterruptedIOException {
+        try {
+            progress.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the replay writer");
+        }
+    }
+
+    /**
+     * The loop of the writer thread: writes every buffer handed over to the end of the file
+     * and gives it back, until the recorder is closed.
+     */
+    private void write() {
+        while (true) {
+            ByteBuffer writing;
+            boolean last;
+            lock.lock();
+            try {
+                while (full == null && !closed) {
+                    work.await();
+                }
+                writing = full;
+                full = null;
+                last = closed;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            if (writing != null) {
+                try {
+                    while (writing.hasRemaining()) {
+                        channel.write(writing);
+                    }
+                } catch (IOException e) {
+                    lock.lock();
+                    try {
+                        failure = e;
+                        progress.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                    return;
+                }
+
+                lock.lock();
+                try {
+                    spare = writing.clear();
+                    progress.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (last) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hands the last ticks to the writer thread, waits for everything to be written and closes the file.
+     * Closing a recorder again does nothing.
+     *
+     * @throws IOException if the file cannot be written or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flush();
+        } finally {
+            lock.lock();
+            try {
+                closed = true;
+                work.signal();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Returns the number of ticks recorded.
+     *
+     * @return the number of ticks.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Makes room in the buffer, handing it to the writer and growing it for records larger than it.
+     *
+     * @param size the number of bytes needed.
+     * @throws IOException if the file cannot be written.
+     */
+    private void ensureRemaining(int size) throws IOException {
+        if (buffer.remaining() >= size) {
+            return;
+        }
+        flush();
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(size);
+        }
+    }
+
+    /**
+     * Returns the id of a built-in behavior.
+     *
+     * @param behavior the behavior.
+     * @return its position in BEHAVIORS.
+     * @throws IllegalArgumentException if the behavior is not built in.
+     */
+    private static int behaviorId(FoodBehavior behavior) {
+        for (int i = 0; i < BEHAVIORS.length; i++) {
+            if (BEHAVIORS[i] == behavior) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Only built-in food behaviors can be recorded: " + behavior);
+    }
+}
@@ -1,15 +1,19 @@
 package com.snakegame;
 
-import java.awt.*;
+import java.util.Arrays;
 
 /**
  * The Rock class represents a rock object in the game.
  * Rocks are obstacles that the snake must avoid.
  * They have a position and size.
+ * The rocks are marked on the occupancy grid, which answers collisions, and kept as one array of keys
+ * sorted row by row, which lets the view find the rocks in a part of a large map without looking
+ * at all of them. Rocks never move, so they can be read from any thread.
  */
 class Rock {
-    public Point[] rocks;
     private static final int ROCK_SIZE = 10;
+    private final Occupancy occupancy;
+    private final long[] sorted;
 
     /**
      * Constructs a new Rock object with the specified number of rocks and their positions.
@@ -17,10 +21,34 @@ class Rock {
      * @param numRocks  the number of rocks to generate.
      * @param mapWidth  the width of the game map.
      * @param mapHeight the height of the game map.
+     * @param occupancy the grid the rocks are marked on.
+     * @param random    the random source of the game.
      */
-    public Rock(int numRocks, int mapWidth, int mapHeight, int border) {
-        rocks = new Point[numRocks];
-        generateRocks(numRocks, mapWidth, mapHeight, border);
+    public Rock(int numRocks, int mapWidth, int mapHeight, int border, Occupancy occupancy, GameRandom random) {
+        this.occupancy = occupancy;
+        sorted = new long[numRocks];
+        generateRocks(numRocks, mapWidth, mapHeight, border, random);
+        Arrays.sort(sorted);
+    }
+
+    /**
+     * Constructs a new Rock object with the rocks of a generated level.
+     *
+     * @param level     the level to place the rocks of.
+     * @param border    the offset of the level's first cell on both axes.
+     * @param occupancy the grid the rocks are marked on.
+     */
+    public Rock(Level level, int border, Occupancy occupancy) {
+        this.occupancy = occupancy;
+        sorted = new long[level.getRockCount()];
+        int i = 0;
+        for (long cell = level.nextRock(0); cell >= 0; cell = level.nextRock(cell + 1)) {
+            int x = border + (int) (cell % level.getCols()) * ROCK_SIZE;
+            int y = border + (int) (cell / level.getCols()) * ROCK_SIZE;
+            sorted[i++] = rowKey(x, y);
+            occupancy.addRock(x, y);
+        }
+        // The level lists its rocks row by row already
     }
 
     /**
@@ -29,39 +57,97 @@ class Rock {
      * @param numRocks  the number of rocks to generate.
      * @param mapWidth  the width of the game map.
      * @param mapHeight the height of the game map.
+     * @param random    the random source of the game.
      */
-    private void generateRocks(int numRocks, int mapWidth, int mapHeight, int border) {
+    private void generateRocks(int numRocks, int mapWidth, int mapHeight, int border, GameRandom random) {
         for (int i = 0; i < numRocks; i++) {
-            int x = ((int) (mapWidth * Math.random() + border - ROCK_SIZE) / 10) * 10;
-            int y = ((int) (mapHeight * Math.random() + border - ROCK_SIZE) / 10) * 10;
-            rocks[i] = new Point(x, y);
+            int x = ((int) (mapWidth * random.nextDouble() + border - ROCK_SIZE) / 10) * 10;
+            int y = ((int) (mapHeight * random.nextDouble() + border - ROCK_SIZE) / 10) * 10;
+            sorted[i] = rowKey(x, y);
+            occupancy.addRock(x, y);
         }
     }
 
     /**
-     * Draws the rocks on the graphics object.
+     * Returns the position, in row order, of the first rock at or after the given coordinates.
+     * Rocks are ordered top to bottom, then left to right.
      *
-     * @param g2d the Graphics2D object to draw on.
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the position of the rock, or the number of rocks if there is none.
      */
-    public void draw(Graphics2D g2d) {
-        g2d.setColor(Color.GRAY);
-        for (Point rock : rocks) {
-            g2d.fillRect(rock.getX(), rock.getY(), ROCK_SIZE, ROCK_SIZE);
+    public int findInRowOrder(int x, int y) {
+        long key = rowKey(x, y);
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
         }
+        return low;
     }
 
     /**
-     * Checks if a point collides with any of the rocks.
+     * Returns the x-coordinate of a rock in row order.
      *
-     * @param point the point to check for collision.
-     * @return true if the point collides with any rock, false otherwise.
+     * @param i the position of the rock in row order.
+     * @return the x-coordinate.
      */
-    public boolean collidesWith(Point point) {
-        for (Point rock : rocks) {
-            if (point.intersects(rock, ROCK_SIZE - 1)) {
-                return true;
-            }
-        }
-        return false;
+    public int getSortedX(int i) {
+        return (int) sorted[i] ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * Returns the y-coordinate of a rock in row order.
+     *
+     * @param i the position of the rock in row order.
+     * @return the y-coordinate.
+     */
+    public int getSortedY(int i) {
+        return (int) (sorted[i] >> 32);
+    }
+
+    /**
+     * Returns the number of rocks.
+     *
+     * @return the number of rocks.
+     */
+    public int getCount() {
+        return sorted.length;
+    }
+
+    /**
+     * Returns a key that sorts coordinates row by row.
+     *
+     * @param x the x-coordinate.
+     * @param y the y-coordinate.
+     * @return the y-coordinate in the high bits and the x-coordinate, made unsigned, in the low bits.
+     */
+    private static long rowKey(int x, int y) {
+        return ((long) y << 32) | ((x ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the size of a rock.
+     *
+     * @return the size of a rock.
+     */
+    public int getSize() {
+        return ROCK_SIZE;
+    }
+
+    /**
+     * Checks if the given coordinates collide with any of the rocks.
+     *
+     * @param x the x-coordinate to check for collision.
+     * @param y the y-coordinate to check for collision.
+     * @return true if the coordinates collide with any rock, false otherwise.
+     */
+    public boolean collidesWith(int x, int y) {
+        return occupancy.hasRock(x, y);
     }
 }
@@ -0,0 +1,146 @@
+package com.snakegame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The Room class is a single game hosted by the GameServer, played by the client on the other end of its connection.
+ * Inputs are offered by the server's network thread and picked up by the next tick, the latest one winning.
+ * Ticks run on the room's shard thread, which sends the client an update after every tick.
+ * When the game is over the update saying so, with the final points, is sent first,
+ * and the game starts again on the tick after it, so a room lives as long as its connection.
+ */
+class Room {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final GameEngine engine;
+    private final SocketChannel channel;
+    private final ByteBuffer in = ByteBuffer.allocate(GameServer.INPUT_SIZE * 16);
+    private final ByteBuffer out = ByteBuffer.allocateDirect(GameServer.UPDATE_SIZE);
+    private final AtomicReference<Direction> input = new AtomicReference<>();
+    private volatile long inputStamp;
+    private volatile boolean closed;
+    private boolean gameOverSent;
+    private long droppedUpdates;
+
+    /**
+     * Creates a new Room and starts its game.
+     *
+     * @param seed    the seed of the game.
+     * @param channel the connection to the client.
+     */
+    public Room(long seed, SocketChannel channel) {
+        this.engine = new GameEngine(seed);
+        this.channel = channel;
+        engine.reset();
+        out.limit(0);
+    }
+
+    /**
+     * Reads the inputs the client has sent. Called by the network thread when the connection is readable.
+     *
+     * @return false if the connection was closed, true otherwise.
+     */
+    boolean read() {
+        try {
+            if (channel.read(in) < 0) {
+                close();
+                return false;
+            }
+        } catch (IOException e) {
+            close();
+            return false;
+        }
+
+        in.flip();
+        while (in.remaining() >= GameServer.INPUT_SIZE) {
+            int direction = in.get();
+            long stamp = in.getLong();
+            if (direction >= 0 && direction < DIRECTIONS.length) {
+                input.set(DIRECTIONS[direction]);
+                inputStamp = stamp;
+            }
+        }
+        in.compact();
+        return true;
+    }
+
+    /**
+     * Advances the game by one tick and sends the client an update.
+     * If the client has not taken the previous update yet, this one is dropped: every update
+     * carries the whole state the client needs, so the next one makes up for it.
+     * Only the update that ends a game is never dropped: the game waits until it has been sent.
+     *
+     * @return false if the connection was closed, true otherwise.
+     */
+    boolean tick() {
+        if (closed) {
+            return false;
+        }
+
+        // The stamp is read before the input, so it never belongs to a later input than the one applied
+        long stamp = inputStamp;
+        if (engine.getStatus() == GameStatus.GAME_OVER && gameOverSent) {
+            engine.reset();
+        }
+        // A game that is over waits for its last update to be sent before it starts again
+        if (engine.getStatus() != GameStatus.GAME_OVER) {
+            engine.step(input.getAndSet(null));
+        }
+
+        try {
+            if (out.hasRemaining() && channel.write(out) >= 0 && out.hasRemaining()) {
+                droppedUpdates++;
+                return true;
+            }
+            Snake snake = engine.getSnake();
+            out.clear();
+            out.putInt(engine.getTicks())
+                    .put((byte) engine.getStatus().ordinal())
+                    .putInt(engine.getPoints())
+                    .putInt(snake.getHeadX())
+                    .putInt(snake.getHeadY())
+                    .putInt(snake.getTailLength())
+                    .putLong(stamp);
+            out.flip();
+            gameOverSent = engine.getStatus() == GameStatus.GAME_OVER;
+            channel.write(out);
+        } catch (IOException e) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Closes the connection. The room is dropped by its shard on the next tick.
+     */
+    void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing left to clean up
+        }
+    }
+
+    /**
+     * Checks if the connection was closed.
+     *
+     * @return true if the room is closed, false otherwise.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the number of updates dropped because the client was not keeping up.
+     *
+     * @return the number of dropped updates.
+     */
+    public long getDroppedUpdates() {
+        return droppedUpdates;
+    }
+}
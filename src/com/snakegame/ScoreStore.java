@@ -0,0 +1,545 @@
+package com.snakegame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ScoreStore keeps every finished game in an append-only file of fixed-size records:
+ * the points, the length of the snake, the ticks played, the cause of death, the seed and when the game ended.
+ * Opening a store scans the file once through a memory map to rebuild its leaderboard,
+ * the best topK games, which is then kept up to date in memory so it is read without touching the file.
+ *
+ * Appending only copies the record into a buffer; a writer thread moves full buffers to the file,
+ * and whatever is left at least every FLUSH_MILLIS. So a game over costs no I/O, and batch runs
+ * append millions of games at the speed of a memory copy. Records still in the buffer are lost
+ * if the process dies without closing the store. Any thread may append.
+ */
+class ScoreStore implements AutoCloseable {
+    static final int MAGIC = 0x534E4B53;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 32;
+
+    private static final DeathCause[] CAUSES = DeathCause.values();
+    private static final int BUFFER_RECORDS = 1 << 12;
+    private static final long FLUSH_MILLIS = 200;
+    // Records are read through maps of this many bytes, a multiple of the record size
+    private static final long CHUNK_SIZE = (long) RECORD_SIZE << 25;
+
+    // The best first, and the earlier of two equal scores
+    private static final Comparator<Entry> RANKING =
+            Comparator.comparingInt(Entry::getPoints).reversed().thenComparingLong(Entry::getIndex);
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Thread writer;
+    private final int topK;
+
+    // The leaderboard, as a heap with the worst of the best at the root
+    private final Entry[] top;
+    private int topCount;
+
+    // Appenders fill pending; the writer swaps it for its own buffer when it writes.
+    // The writer waits for work, appenders for room in pending and flushes for the writer to catch up.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Condition progress = lock.newCondition();
+    private ByteBuffer pending = ByteBuffer.allocate(BUFFER_RECORDS * RECORD_SIZE);
+    private ByteBuffer writing = ByteBuffer.allocate(BUFFER_RECORDS * RECORD_SIZE);
+    private long count;
+    private long written;
+    private long flushRequested;
+    private boolean closed;
+    private IOException failure;
+
+    // Reading maps the file as it grows, one reader at a time
+    private final Object mapLock = new Object();
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+    /**
+     * Opens a store, creating the file if it does not exist, and rebuilds its leaderboard.
+     * A record cut off at the end of the file, as left by a process that died while writing, is dropped.
+     *
+     * @param path the file of the store.
+     * @param topK the number of games on the leaderboard.
+     * @throws IOException              if the file cannot be read or written.
+     * @throws IllegalArgumentException if topK is not positive, or the file is not a score store.
+     */
+    public ScoreStore(Path path, int topK) throws IOException {
+        if (topK <= 0) {
+            throw new IllegalArgumentException("Leaderboard size must be positive: " + topK);
+        }
+        this.path = path;
+        this.topK = topK;
+        this.top = new Entry[topK];
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort(VERSION)
+                        .putShort((short) RECORD_SIZE);
+                channel.write(header.flip(), 0);
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                channel.read(header, 0);
+                header.flip();
+                if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                    throw new IllegalArgumentException("Not a score store: " + path);
+                }
+                short version = header.getShort();
+                if (version != VERSION || header.getShort() != RECORD_SIZE) {
+                    throw new IllegalArgumentException("Unsupported score store version: " + version);
+                }
+            }
+            count = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+            channel.truncate(HEADER_SIZE + count * RECORD_SIZE);
+            written = count;
+            flushRequested = count;
+            index();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        channel.position(HEADER_SIZE + count * RECORD_SIZE);
+        writer = new Thread(this::write, "score-store");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Scans every record on file into the leaderboard.
+     */
+    private void index() throws IOException {
+        mapUpTo(count);
+        for (long i = 0; i < count; i++) {
+            ByteBuffer chunk = chunks[(int) (i * RECORD_SIZE / CHUNK_SIZE)];
+            int points = chunk.getInt((int) (i * RECORD_SIZE % CHUNK_SIZE));
+            if (topCount < topK || points > top[0].getPoints()) {
+                rank(read(i));
+            }
+        }
+    }
+
+    /**
+     * Appends a finished game.
+     *
+     * @param engine the game, which is over or was stopped.
+     */
+    public void append(GameEngine engine) {
+        append(engine.getPoints(), engine.getSnake().getTailLength() + 1, engine.getTicks(),
+                engine.getDeathCause(), engine.getSeed(), System.currentTimeMillis());
+    }
+
+    /**
+     * Appends a finished game. Waits only if the writer is a whole buffer behind.
+     * Once writing failed, which was reported on System.err, games are no longer kept.
+     *
+     * @param points the points scored.
+     * @param length the length of the snake, head included.
+     * @param ticks  the ticks played.
+     * @param cause  what ended the game.
+     * @param seed   the seed of the game.
+     * @param time   when the game ended, in milliseconds since the epoch.
+     * @throws IllegalStateException if the store is closed.
+     */
+    public void append(int points, int length, int ticks, DeathCause cause, long seed, long time) {
+        lock.lock();
+        try {
+            while (!pending.hasRemaining() && !closed && failure == null) {
+                work.signal();
+                awaitWriter();
+            }
+            if (failure != null) {
+                return;
+            }
+            if (closed) {
+                throw new IllegalStateException("Score store is closed: " + path);
+            }
+            pending.putInt(points).putInt(length).putInt(ticks).put((byte) cause.ordinal()).put((byte) 0)
+                    .putShort((short) 0).putLong(seed).putLong(time);
+            long index = count++;
+            if (topCount < topK || points > top[0].getPoints()) {
+                rank(new Entry(index, points, length, ticks, cause, seed, time));
+            }
+            if (pending.position() == pending.capacity() / 2) {
+                work.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts a game on the leaderboard, pushing out the worst one if it is full.
+     *
+     * @param entry the game, which is better than the worst on a full leaderboard.
+     */
+    private void rank(Entry entry) {
+        if (topCount < topK) {
+            int i = topCount++;
+            while (i > 0 && RANKING.compare(top[(i - 1) / 2], entry) < 0) {
+                top[i] = top[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            top[i] = entry;
+            return;
+        }
+        int i = 0;
+        while (2 * i + 1 < topCount) {
+            int child = 2 * i + 1;
+            if (child + 1 < topCount && RANKING.compare(top[child + 1], top[child]) > 0) {
+                child++;
+            }
+            if (RANKING.compare(top[child], entry) <= 0) {
+                break;
+            }
+            top[i] = top[child];
+            i = child;
+        }
+        top[i] = entry;
+    }
+
+    /**
+     * Returns the leaderboard.
+     *
+     * @return the best games, best first.
+     */
+    public Entry[] getTop() {
+        Entry[] sorted;
+        lock.lock();
+        try {
+            sorted = Arrays.copyOf(top, topCount);
+        } finally {
+            lock.unlock();
+        }
+        Arrays.sort(sorted, RANKING);
+        return sorted;
+    }
+
+    /**
+     * Returns the best score.
+     *
+     * @return the points of the best game, 0 if there is none.
+     */
+    public int getBest() {
+        lock.lock();
+        try {
+            int best = 0;
+            for (int i = 0; i < topCount; i++) {
+                best = Math.max(best, top[i].getPoints());
+            }
+            return best;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of games in the store, including those not written yet.
+     *
+     * @return the number of games.
+     */
+    public long size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a game by its position in the store, writing the buffered ones first if needed.
+     *
+     * @param index the position, 0 being the first game appended.
+     * @return the game.
+     * @throws IOException               if the file cannot be read or written.
+     * @throws IndexOutOfBoundsException if there is no such game.
+     */
+    public Entry get(long index) throws IOException {
+        boolean buffered;
+        lock.lock();
+        try {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("No game " + index + " in " + count);
+            }
+            buffered = index >= written;
+        } finally {
+            lock.unlock();
+        }
+        if (buffered) {
+            flush();
+        }
+        synchronized (mapLock) {
+            mapUpTo(index + 1);
+            return read(index);
+        }
+    }
+
+    /**
+     * Maps the file far enough to read the given number of records. Only the last chunk is ever remapped.
+     *
+     * @param records the number of records that must be readable.
+     */
+    private void mapUpTo(long records) throws IOException {
+        long end = HEADER_SIZE + records * RECORD_SIZE;
+        int needed = (int) ((records * RECORD_SIZE + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        if (needed > chunks.length) {
+            chunks = Arrays.copyOf(chunks, needed);
+        }
+        for (int k = 0; k < needed; k++) {
+            long from = HEADER_SIZE + k * CHUNK_SIZE;
+            long size = Math.min(CHUNK_SIZE, end - from);
+            if (chunks[k] == null || chunks[k].capacity() < size) {
+                chunks[k] = channel.map(FileChannel.MapMode.READ_ONLY, from, size);
+            }
+        }
+    }
+
+    /**
+     * Reads a record from the mapped file.
+     *
+     * @param index the position of the record.
+     * @return the game.
+     */
+    private Entry read(long index) {
+        ByteBuffer chunk = chunks[(int) (index * RECORD_SIZE / CHUNK_SIZE)];
+        int p = (int) (index * RECORD_SIZE % CHUNK_SIZE);
+        return new Entry(index, chunk.getInt(p), chunk.getInt(p + 4), chunk.getInt(p + 8), CAUSES[chunk.get(p + 12)],
+                chunk.getLong(p + 16), chunk.getLong(p + 24));
+    }
+
+    /**
+     * Writes every game appended so far to the file and waits until they are.
+     *
+     * @throws IOException if the writer failed.
+     */
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            flushRequested = count;
+            work.signal();
+            while (written < flushRequested && failure == null && writer.isAlive()) {
+                awaitWriter();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the writer to make progress. Must be called holding the lock.
+     */
+    private void awaitWriter() {
+        try {
+            progress.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for the score store", e);
+        }
+    }
+
+    /**
+     * The loop of the writer thread: takes the pending buffer when it is half full, a flush asks for it,
+     * the store closes or FLUSH_MILLIS passed, and writes it to the end of the file.
+     */
+    private void write() {
+        while (true) {
+            long records;
+            boolean last;
+            lock.lock();
+            try {
+                long nanos = TimeUnit.MILLISECONDS.toNanos(FLUSH_MILLIS);
+                while (!closed && pending.position() < pending.capacity() / 2 && written >= flushRequested
+                        && nanos > 0) {
+                    nanos = work.awaitNanos(nanos);
+                }
+                ByteBuffer full = pending;
+                pending = writing;
+                writing = full;
+                records = writing.position() / RECORD_SIZE;
+                last = closed;
+                progress.signalAll();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            if (records > 0) {
+                try {
+                    writing.flip();
+                    while (writing.hasRemaining()) {
+                        channel.write(writing);
+                    }
+                    writing.clear();
+                } catch (IOException e) {
+                    System.err.println("Scores not saved: " + e.getMessage());
+                    lock.lock();
+                    try {
+                        failure = e;
+                        progress.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                    return;
+                }
+
+                lock.lock();
+                try {
+                    written += records;
+                    progress.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (last) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the games still buffered and closes the file.
+     *
+     * @throws IOException if the file cannot be written or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * A finished game as kept in the store.
+     */
+    static class Entry {
+        private final long index;
+        private final int points;
+        private final int length;
+        private final int ticks;
+        private final DeathCause cause;
+        private final long seed;
+        private final long time;
+
+        /**
+         * Creates an entry for a game read from the store or just appended to it.
+         *
+         * @param index  the position of the game in the store.
+         * @param points the points scored.
+         * @param length the length of the snake, head included.
+         * @param ticks  the ticks played.
+         * @param cause  what ended the game.
+         * @param seed   the seed of the game.
+         * @param time   when the game ended, in milliseconds since the epoch.
+         */
+        Entry(long index, int points, int length, int ticks, DeathCause cause, long seed, long time) {
+            this.index = index;
+            this.points = points;
+            this.length = length;
+            this.ticks = ticks;
+            this.cause = cause;
+            this.seed = seed;
+            this.time = time;
+        }
+
+        /**
+         * Returns the position of the game in the store.
+         *
+         * @return the index, 0 being the first game appended.
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the points scored.
+         *
+         * @return the points.
+         */
+        public int getPoints() {
+            return points;
+        }
+
+        /**
+         * Returns the length of the snake at the end, head included.
+         *
+         * @return the length.
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Returns the ticks played.
+         *
+         * @return the ticks.
+         */
+        public int getTicks() {
+            return ticks;
+        }
+
+        /**
+         * Returns what ended the game.
+         *
+         * @return the cause of death, NONE if the game was stopped.
+         */
+        public DeathCause getCause() {
+            return cause;
+        }
+
+        /**
+         * Returns the seed of the game, which replays it with the same strategy.
+         *
+         * @return the seed.
+         */
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * Returns when the game ended.
+         *
+         * @return the time in milliseconds since the epoch.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("#%d %d points, length %d, %d ticks, %s, seed %d", index, points, length, ticks,
+                    cause, seed);
+        }
+    }
+}
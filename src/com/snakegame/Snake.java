@@ -1,6 +1,6 @@
 package com.snakegame;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Represents the direction of movement.
@@ -29,50 +29,211 @@ enum Direction {
 
 /**
  * Represents the Snake in the game.
+ * The body is stored as packed coordinates in a circular buffer, head first,
+ * so moving is a constant-time push of the new head and pop of the last segment.
+ * The buffer is sized for a snake filling the whole field, so it normally never grows.
+ * The snake counts its moves, so a saved shape can be restored by undoing only the moves made since.
  */
 class Snake {
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_INITIAL_CAPACITY = 1 << 16;
+
+    private final Occupancy occupancy;
     private Direction direction;
-    private Point head;
-    private ArrayList<Point> tail;
+    private long[] body;
+    private int mask;
+    private int headIndex;
+    private int length;
+    private long moves;
 
     /**
      * Creates a new Snake object with the specified coordinates.
      *
      * @param x the x-coordinate of the snake's head.
      * @param y the y-coordinate of the snake's head.
+     * @param occupancy the grid the snake marks its segments on.
      */
-    public Snake(int x, int y) {
-        this.head = new Point(x, y);
+    public Snake(int x, int y, Occupancy occupancy) {
+        this.occupancy = occupancy;
+
+        int capacity = Integer.highestOneBit((int) Math.min(occupancy.getCellCount() + 4, MAX_INITIAL_CAPACITY) - 1) << 1;
+        this.body = new long[Math.max(capacity, MIN_CAPACITY)];
+        this.mask = body.length - 1;
+        reset(x, y);
+    }
+
+    /**
+     * Puts the snake back to its starting length at the specified coordinates, reusing its buffer.
+     * The caller is responsible for clearing the old segments from the occupancy grid.
+     *
+     * @param x the x-coordinate of the snake's head.
+     * @param y the y-coordinate of the snake's head.
+     */
+    public void reset(int x, int y) {
         this.direction = Direction.RIGHT;
-        this.tail = new ArrayList<Point>();
+        this.headIndex = 0;
+        this.length = 1;
+        this.moves = 0;
+        this.body[0] = Point.pack(x, y);
+        occupancy.addSnake(x, y);
+
+        addSegment(Point.pack(0, 0));
+        addSegment(Point.pack(0, 0));
+        addSegment(Point.pack(0, 0));
+    }
+
+    /**
+     * Copies the segments of the snake into an array, last segment first, as restore takes them.
+     *
+     * @param segments the array to copy to, with room for every segment.
+     * @return the number of segments.
+     */
+    public int save(long[] segments) {
+        int tail = (headIndex - length + 1) & mask;
+        int first = Math.min(length, body.length - tail);
+        System.arraycopy(body, tail, segments, 0, first);
+        System.arraycopy(body, 0, segments, first, length - first);
+        return length;
+    }
+
+    /**
+     * Puts the snake back into a shape copied by save, taking its own segments off the occupancy grid.
+     * When the snake has only moved since the shape was saved, just the cells it moved onto and the ones
+     * it left behind are changed; otherwise the whole snake is replaced.
+     *
+     * @param direction the direction the snake is moving in.
+     * @param segments  the packed coordinates of the segments, last segment first.
+     * @param count     the number of segments, at least one.
+     * @param moves     the number of moves the snake had made when it was saved, or -1 if not known.
+     */
+    public void restore(Direction direction, long[] segments, int count, long moves) {
+        long since = this.moves - moves;
+        if (moves >= 0 && count == length && since >= 0 && since < count
+                && matches(segments, (int) since, count - (int) since)) {
+            undoMoves(segments, (int) since);
+        } else {
+            replace(segments, count);
+        }
+        this.direction = direction;
+        this.moves = Math.max(moves, 0);
+    }
+
+    /**
+     * Checks if the segments from the last one on are the given saved ones.
+     *
+     * @param segments the saved segments, last segment first.
+     * @param from     the index of the first saved segment to compare.
+     * @param count    the number of segments to compare.
+     * @return true if they are the same, false otherwise.
+     */
+    private boolean matches(long[] segments, int from, int count) {
+        int tail = (headIndex - length + 1) & mask;
+        int first = Math.min(count, body.length - tail);
+        return Arrays.equals(body, tail, tail + first, segments, from, from + first)
+                && Arrays.equals(body, 0, count - first, segments, from + first, from + count);
+    }
 
-        this.tail.add(new Point(0, 0));
-        this.tail.add(new Point(0, 0));
-        this.tail.add(new Point(0, 0));
+    /**
+     * Takes back the given number of moves: the heads they added are dropped,
+     * and the saved segments they dropped come back behind the tail.
+     *
+     * @param segments the saved segments, last segment first.
+     * @param count    the number of moves.
+     */
+    private void undoMoves(long[] segments, int count) {
+        for (int i = 0; i < count; i++) {
+            long head = body[(headIndex - i) & mask];
+            occupancy.removeSnake(Point.unpackX(head), Point.unpackY(head));
+        }
+        headIndex = (headIndex - count) & mask;
+        int tail = headIndex - length + 1;
+        for (int i = 0; i < count; i++) {
+            body[(tail + i) & mask] = segments[i];
+            occupancy.addSnake(Point.unpackX(segments[i]), Point.unpackY(segments[i]));
+        }
+    }
+
+    /**
+     * Replaces every segment of the snake, growing the buffer when it is too small.
+     *
+     * @param segments the new segments, last segment first.
+     * @param count    the number of segments.
+     */
+    private void replace(long[] segments, int count) {
+        for (int i = 0; i < length; i++) {
+            long segment = body[(headIndex - i) & mask];
+            occupancy.removeSnake(Point.unpackX(segment), Point.unpackY(segment));
+        }
+        if (body.length < count) {
+            body = new long[Integer.highestOneBit(count - 1) << 1];
+            mask = body.length - 1;
+        }
+        System.arraycopy(segments, 0, body, 0, count);
+        headIndex = count - 1;
+        length = count;
+        for (int i = 0; i < count; i++) {
+            occupancy.addSnake(Point.unpackX(segments[i]), Point.unpackY(segments[i]));
+        }
     }
 
     /**
      * Moves the snake in the current direction.
+     * The new head takes the slot after the current head, which drops the last segment.
      */
     public void move() {
-        ArrayList<Point> newTail = new ArrayList<Point>();
+        int x = getHeadX();
+        int y = getHeadY();
 
-        for (int i = 0, size = tail.size(); i < size; i++) {
-            Point previous = i == 0 ? head : tail.get(i - 1);
-
-            newTail.add(new Point(previous.getX(), previous.getY()));
+        switch (direction) {
+            case UP:
+                y -= 10;
+                break;
+            case DOWN:
+                y += 10;
+                break;
+            case RIGHT:
+                x += 10;
+                break;
+            case LEFT:
+                x -= 10;
+                break;
         }
 
-        this.tail = newTail;
+        long last = body[(headIndex - length + 1) & mask];
+        occupancy.removeSnake(Point.unpackX(last), Point.unpackY(last));
+        occupancy.addSnake(x, y);
 
-        this.head.move(this.direction, 10);
+        headIndex = (headIndex + 1) & mask;
+        body[headIndex] = Point.pack(x, y);
+        moves++;
     }
 
     /**
      * Adds a new tail segment to the snake.
      */
     public void addTail() {
-        this.tail.add(new Point(-10, -10));
+        addSegment(Point.pack(-10, -10));
+    }
+
+    /**
+     * Appends a segment after the last one, growing the buffer when it is full.
+     *
+     * @param segment the packed coordinates of the new segment.
+     */
+    private void addSegment(long segment) {
+        if (length == body.length) {
+            long[] grown = new long[body.length * 2];
+            for (int i = 0; i < length; i++) {
+                grown[length - 1 - i] = body[(headIndex - i) & mask];
+            }
+            body = grown;
+            mask = grown.length - 1;
+            headIndex = length - 1;
+        }
+
+        body[(headIndex - length) & mask] = segment;
+        length++;
+        occupancy.addSnake(Point.unpackX(segment), Point.unpackY(segment));
     }
 
     /**
@@ -87,20 +248,86 @@ class Snake {
     }
 
     /**
-     * Returns the tail segments of the snake.
+     * Returns the direction the snake is moving in.
+     *
+     * @return the direction.
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * Returns the number of tail segments, not counting the head.
+     *
+     * @return the tail length.
+     */
+    public int getTailLength() {
+        return length - 1;
+    }
+
+    /**
+     * Returns the packed coordinates of a tail segment.
+     *
+     * @param i the index of the segment, 0 being the one right behind the head.
+     * @return the packed coordinates of the segment.
+     */
+    public long getTail(int i) {
+        return body[(headIndex - 1 - i) & mask];
+    }
+
+    /**
+     * Returns the x-coordinate of a tail segment.
+     *
+     * @param i the index of the segment, 0 being the one right behind the head.
+     * @return the x-coordinate of the segment.
+     */
+    public int getTailX(int i) {
+        return Point.unpackX(getTail(i));
+    }
+
+    /**
+     * Returns the y-coordinate of a tail segment.
+     *
+     * @param i the index of the segment, 0 being the one right behind the head.
+     * @return the y-coordinate of the segment.
+     */
+    public int getTailY(int i) {
+        return Point.unpackY(getTail(i));
+    }
+
+    /**
+     * Returns the number of moves made since the snake was reset.
+     *
+     * @return the number of moves.
+     */
+    public long getMoves() {
+        return moves;
+    }
+
+    /**
+     * Returns the packed coordinates of the head.
+     *
+     * @return the packed coordinates of the head.
+     */
+    public long getHead() {
+        return body[headIndex];
+    }
+
+    /**
+     * Returns the x-coordinate of the head.
      *
-     * @return the tail segments.
+     * @return the x-coordinate of the head.
      */
-    public ArrayList<Point> getTail() {
-        return this.tail;
+    public int getHeadX() {
+        return Point.unpackX(body[headIndex]);
     }
 
     /**
-     * Returns the head of the snake.
+     * Returns the y-coordinate of the head.
      *
-     * @return the head.
+     * @return the y-coordinate of the head.
      */
-    public Point getHead() {
-        return this.head;
+    public int getHeadY() {
+        return Point.unpackY(body[headIndex]);
     }
 }
@@ -0,0 +1,139 @@
+package com.snakegame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The StateCodec class holds what the StateEncoder and the StateDecoder share: the frame kinds,
+ * the step codes and the variable-length integers the frames are made of.
+ *
+ * Positions are sent as cells relative to the map's origin. A position next to a known one is sent as a
+ * step code of a few bits; anything else is sent in full, as a pair of zigzag varints, so small values
+ * in either direction take a single byte.
+ */
+final class StateCodec {
+    /** A frame carrying the whole state. */
+    public static final byte KEYFRAME = 1;
+    /** A frame carrying the changes since the previous frame. */
+    public static final byte DELTA = 2;
+
+    /** Step codes 0 to 3 are the ordinals of Direction: one cell up, down, left or right. */
+    public static final int SAME = 4;
+    /** The position follows in full. */
+    public static final int ABSOLUTE = 5;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * Not to be instantiated; the codec is only constants and static methods.
+     */
+    private StateCodec() {
+    }
+
+    /**
+     * Returns the step code from one cell to another.
+     *
+     * @param fromX the column of the first cell.
+     * @param fromY the row of the first cell.
+     * @param toX   the column of the second cell.
+     * @param toY   the row of the second cell.
+     * @return the ordinal of the direction for a neighbouring cell, SAME, or ABSOLUTE for any other cell.
+     */
+    public static int step(int fromX, int fromY, int toX, int toY) {
+        int dx = toX - fromX;
+        int dy = toY - fromY;
+        if (dx == 0) {
+            return dy == 0 ? SAME : dy == -1 ? Direction.UP.ordinal() : dy == 1 ? Direction.DOWN.ordinal() : ABSOLUTE;
+        }
+        if (dy == 0) {
+            return dx == -1 ? Direction.LEFT.ordinal() : dx == 1 ? Direction.RIGHT.ordinal() : ABSOLUTE;
+        }
+        return ABSOLUTE;
+    }
+
+    /**
+     * Applies a step code to packed cell coordinates.
+     *
+     * @param cell the packed column and row.
+     * @param code a step code other than ABSOLUTE.
+     * @return the packed column and row after the step.
+     */
+    public static long apply(long cell, int code) {
+        if (code == SAME) {
+            return cell;
+        }
+        int x = Point.unpackX(cell);
+        int y = Point.unpackY(cell);
+        switch (DIRECTIONS[code]) {
+            case UP:
+                return Point.pack(x, y - 1);
+            case DOWN:
+                return Point.pack(x, y + 1);
+            case LEFT:
+                return Point.pack(x - 1, y);
+            default:
+                return Point.pack(x + 1, y);
+        }
+    }
+
+    /**
+     * Returns the direction of a step code.
+     *
+     * @param code a step code.
+     * @return the direction, or null for SAME and ABSOLUTE.
+     */
+    public static Direction direction(int code) {
+        return code < DIRECTIONS.length ? DIRECTIONS[code] : null;
+    }
+
+    /**
+     * Writes an unsigned variable-length integer, seven bits per byte, lowest first.
+     *
+     * @param out   the buffer to write to.
+     * @param value the value, treated as unsigned.
+     */
+    public static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned variable-length integer.
+     *
+     * @param in the buffer to read from.
+     * @return the value.
+     */
+    public static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Writes a signed variable-length integer, zigzag encoded so small negative values stay short.
+     *
+     * @param out   the buffer to write to.
+     * @param value the value.
+     */
+    public static void putZigZag(ByteBuffer out, long value) {
+        putVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Reads a signed variable-length integer.
+     *
+     * @param in the buffer to read from.
+     * @return the value.
+     */
+    public static long getZigZag(ByteBuffer in) {
+        long value = getVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,369 @@
+package com.snakegame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The StateDecoder rebuilds the state of a game from the frames written by a StateEncoder.
+ * It must start at a keyframe and then see every frame in order; the state it holds is read
+ * through the getters, in map coordinates like those of the game itself.
+ * Decoding allocates nothing once its arrays have grown to the snake, the rocks and the foods.
+ */
+class StateDecoder {
+    private static final int CELL_SIZE = Occupancy.CELL_SIZE;
+    private static final GameStatus[] STATUSES = GameStatus.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final FoodType[] TYPES = FoodType.values();
+
+    private boolean ready;
+    private int ticks;
+    private GameStatus status = GameStatus.NOT_STARTED;
+    private int points;
+    private int originX;
+    private int originY;
+    private int cols;
+    private int rows;
+    private Direction direction = Direction.RIGHT;
+
+    private long[] rocks = new long[16];
+    private int rockCount;
+
+    // The snake as cells in a circular buffer, head first, like the Snake itself
+    private long[] body = new long[16];
+    private int mask = body.length - 1;
+    private int headIndex;
+    private int length;
+
+    private long[] foodCell = new long[4];
+    private FoodType[] foodType = new FoodType[4];
+    private int foodCount;
+
+    /**
+     * Reads one frame and applies it.
+     *
+     * @param in the buffer to read from, positioned at the start of the frame.
+     * @return the kind of frame read, KEYFRAME or DELTA.
+     * @throws IllegalStateException    if a delta comes before the first keyframe.
+     * @throws IllegalArgumentException if the frame is of an unknown kind.
+     */
+    public byte decode(ByteBuffer in) {
+        byte kind = in.get();
+        if (kind == StateCodec.KEYFRAME) {
+            decodeKeyframe(in);
+        } else if (kind == StateCodec.DELTA) {
+            if (!ready) {
+                throw new IllegalStateException("Delta before the first keyframe");
+            }
+            decodeDelta(in);
+        } else {
+            throw new IllegalArgumentException("Unknown frame kind: " + kind);
+        }
+        return kind;
+    }
+
+    /**
+     * Replaces the whole state with that of a keyframe.
+     *
+     * @param in the buffer to read from.
+     */
+    private void decodeKeyframe(ByteBuffer in) {
+        ticks = (int) StateCodec.getVarLong(in);
+        status = STATUSES[in.get()];
+        points = (int) StateCodec.getVarLong(in);
+        originX = (int) StateCodec.getZigZag(in);
+        originY = (int) StateCodec.getZigZag(in);
+        cols = (int) StateCodec.getVarLong(in);
+        rows = (int) StateCodec.getVarLong(in);
+        direction = DIRECTIONS[in.get()];
+
+        rockCount = (int) StateCodec.getVarLong(in);
+        if (rocks.length < rockCount) {
+            rocks = new long[rockCount];
+        }
+        long cell = 0;
+        for (int i = 0; i < rockCount; i++) {
+            cell += StateCodec.getVarLong(in);
+            rocks[i] = Point.pack((int) (cell % (cols + 2)) - 1, (int) (cell / (cols + 2)) - 1);
+        }
+
+        int segments = (int) StateCodec.getVarLong(in);
+        if (body.length < segments) {
+            body = new long[Integer.highestOneBit(segments - 1) << 1];
+            mask = body.length - 1;
+        }
+        // Lay the snake out tail first, so the head ends up at the highest index
+        headIndex = segments - 1;
+        length = segments;
+        body[headIndex] = getCell(in);
+        int codes = in.position();
+        in.position(codes + segments / 2);
+        for (int i = 1; i < segments; i++) {
+            int code = in.get(codes + (i - 1 >> 1)) >> ((i - 1 & 1) << 2) & 0xF;
+            long previous = body[headIndex - i + 1];
+            body[headIndex - i] = code == StateCodec.ABSOLUTE ? getCell(in) : StateCodec.apply(previous, code);
+        }
+
+        foodCount = (int) StateCodec.getVarLong(in);
+        if (foodCell.length < foodCount) {
+            foodCell = new long[foodCount];
+            foodType = new FoodType[foodCount];
+        }
+        for (int i = 0; i < foodCount; i++) {
+            foodType[i] = TYPES[in.get()];
+            foodCell[i] = getCell(in);
+        }
+        ready = true;
+    }
+
+    /**
+     * Applies the changes of a delta.
+     *
+     * @param in the buffer to read from.
+     */
+    private void decodeDelta(ByteBuffer in) {
+        int flags = (int) StateCodec.getVarLong(in);
+        if ((flags & StateEncoder.HELD) == 0) {
+            ticks++;
+        }
+
+        int headCode = flags & 7;
+        if ((flags & StateEncoder.SHRANK) != 0) {
+            length--;
+        }
+        if (headCode != StateCodec.SAME) {
+            long head = headCode == StateCodec.ABSOLUTE ? getCell(in) : StateCodec.apply(body[headIndex], headCode);
+            ensureCapacity(length + 1);
+            headIndex = (headIndex + 1) & mask;
+            body[headIndex] = head;
+            length++;
+            if (headCode != StateCodec.ABSOLUTE) {
+                direction = StateCodec.direction(headCode);
+            }
+        }
+        if ((flags & StateEncoder.POINTS) != 0) {
+            points += (int) StateCodec.getZigZag(in);
+        }
+        if ((flags & StateEncoder.STATUS) != 0) {
+            status = STATUSES[in.get()];
+        }
+        if ((flags & StateEncoder.GREW) != 0) {
+            int grown = (int) StateCodec.getVarLong(in);
+            ensureCapacity(length + grown);
+            for (int k = 0; k < grown; k++) {
+                body[(headIndex - length) & mask] = getCell(in);
+                length++;
+            }
+        }
+        if ((flags & StateEncoder.FOODS) != 0) {
+            int changed = (int) StateCodec.getVarLong(in);
+            int i = 0;
+            for (int k = 0; k < changed; k++) {
+                i += (int) StateCodec.getVarLong(in);
+                int code = in.get();
+                int step = code & 7;
+                foodType[i] = TYPES[code >> 3];
+                foodCell[i] = step == StateCodec.ABSOLUTE ? getCell(in) : StateCodec.apply(foodCell[i], step);
+            }
+        }
+    }
+
+    /**
+     * Grows the snake's buffer to hold the given number of segments, keeping the head first.
+     *
+     * @param capacity the number of segments.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= body.length) {
+            return;
+        }
+        long[] grown = new long[Integer.highestOneBit(capacity - 1) << 1];
+        for (int i = 0; i < length; i++) {
+            grown[length - 1 - i] = body[(headIndex - i) & mask];
+        }
+        body = grown;
+        mask = grown.length - 1;
+        headIndex = length - 1;
+    }
+
+    /**
+     * Reads a cell as a zigzag column and row.
+     *
+     * @param in the buffer to read from.
+     * @return the packed column and row.
+     */
+    private static long getCell(ByteBuffer in) {
+        int col = (int) StateCodec.getZigZag(in);
+        int row = (int) StateCodec.getZigZag(in);
+        return Point.pack(col, row);
+    }
+
+    /**
+     * Returns the x-coordinate of a packed cell.
+     *
+     * @param cell the packed column and row.
+     * @return the x-coordinate.
+     */
+    private int x(long cell) {
+        return originX + Point.unpackX(cell) * CELL_SIZE;
+    }
+
+    /**
+     * Returns the y-coordinate of a packed cell.
+     *
+     * @param cell the packed column and row.
+     * @return the y-coordinate.
+     */
+    private int y(long cell) {
+        return originY + Point.unpackY(cell) * CELL_SIZE;
+    }
+
+    /**
+     * Returns the number of ticks played.
+     *
+     * @return the number of ticks.
+     */
+    public int getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the status of the game.
+     *
+     * @return the status.
+     */
+    public GameStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the points scored.
+     *
+     * @return the points.
+     */
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * Returns the direction the snake last moved in.
+     *
+     * @return the direction.
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * Returns the width of the map.
+     *
+     * @return the width in pixels.
+     */
+    public int getWidth() {
+        return cols * CELL_SIZE;
+    }
+
+    /**
+     * Returns the height of the map.
+     *
+     * @return the height in pixels.
+     */
+    public int getHeight() {
+        return rows * CELL_SIZE;
+    }
+
+    /**
+     * Returns the number of rocks.
+     *
+     * @return the number of rocks.
+     */
+    public int getRockCount() {
+        return rockCount;
+    }
+
+    /**
+     * Returns the x-coordinate of a rock, in row order.
+     *
+     * @param i the index of the rock.
+     * @return the x-coordinate.
+     */
+    public int getRockX(int i) {
+        return x(rocks[i]);
+    }
+
+    /**
+     * Returns the y-coordinate of a rock, in row order.
+     *
+     * @param i the index of the rock.
+     * @return the y-coordinate.
+     */
+    public int getRockY(int i) {
+        return y(rocks[i]);
+    }
+
+    /**
+     * Returns the number of snake segments, including the head.
+     *
+     * @return the snake length.
+     */
+    public int getSnakeLength() {
+        return length;
+    }
+
+    /**
+     * Returns the x-coordinate of a snake segment.
+     *
+     * @param i the index of the segment, 0 being the head.
+     * @return the x-coordinate.
+     */
+    public int getSnakeX(int i) {
+        return x(body[(headIndex - i) & mask]);
+    }
+
+    /**
+     * Returns the y-coordinate of a snake segment.
+     *
+     * @param i the index of the segment, 0 being the head.
+     * @return the y-coordinate.
+     */
+    public int getSnakeY(int i) {
+        return y(body[(headIndex - i) & mask]);
+    }
+
+    /**
+     * Returns the number of foods.
+     *
+     * @return the number of foods.
+     */
+    public int getFoodCount() {
+        return foodCount;
+    }
+
+    /**
+     * Returns the x-coordinate of a food.
+     *
+     * @param i the index of the food.
+     * @return the x-coordinate.
+     */
+    public int getFoodX(int i) {
+        return x(foodCell[i]);
+    }
+
+    /**
+     * Returns the y-coordinate of a food.
+     *
+     * @param i the index of the food.
+     * @return the y-coordinate.
+     */
+    public int getFoodY(int i) {
+        return y(foodCell[i]);
+    }
+
+    /**
+     * Returns the type of a food.
+     *
+     * @param i the index of the food.
+     * @return the type.
+     */
+    public FoodType getFoodType(int i) {
+        return foodType[i];
+    }
+}
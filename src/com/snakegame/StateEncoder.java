@@ -0,0 +1,321 @@
+package com.snakegame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The StateEncoder writes the state of a game into compact binary frames, one per tick.
+ * A keyframe carries everything: the map, the rocks, the whole snake, the foods and the score.
+ * In between, a delta carries only what the tick changed: the step of the head, whether the tail
+ * shrank, the segments added by eating, the foods that moved and the change in score.
+ * A keyframe is written every keyframeInterval frames, and whenever a delta cannot describe the
+ * change, such as after a reset or a skipped tick. Every tick must be encoded for deltas to work.
+ *
+ * The encoder remembers what it last wrote, so it is tied to one game and one stream.
+ * Encoding allocates nothing once its arrays have grown to the number of foods.
+ *
+ * A keyframe is: KEYFRAME, varint ticks, status ordinal, varint points, zigzag origin x and y,
+ * varint columns and rows, direction ordinal, varint rock count and the rocks as varint gaps between
+ * their cells in row order, varint snake length, zigzag head cell, a step code per further segment
+ * packed two to a byte, the cells of the ABSOLUTE segments, and varint food count followed by the
+ * type ordinal and the zigzag cell of every food.
+ *
+ * A delta is: DELTA, varint flags, then the parts the flags announce, in this order: the head cell if
+ * its step code is ABSOLUTE, the zigzag change in points, the status ordinal, the varint number of added
+ * segments and their cells, and the varint number of changed foods, each as the varint gap to the index
+ * of the previous one, a byte with the step code and the type ordinal, and the cell if the step is ABSOLUTE.
+ */
+class StateEncoder {
+    // The lowest three bits of the flags are the step code of the head
+    static final int SHRANK = 1 << 3;
+    static final int FOODS = 1 << 4;
+    static final int POINTS = 1 << 5;
+    static final int GREW = 1 << 6;
+    static final int STATUS = 1 << 7;
+    static final int HELD = 1 << 8;
+
+    private static final int CELL_SIZE = Occupancy.CELL_SIZE;
+
+    private final GameEngine engine;
+    private final int keyframeInterval;
+    private final int originX;
+    private final int originY;
+    private int sinceKeyframe;
+    private boolean keyframeDue = true;
+
+    // What the last frame said, to diff the next tick against
+    private int ticks;
+    private GameStatus status;
+    private int points;
+    private long head;
+    private int length;
+    private long[] foodCell = new long[0];
+    private FoodType[] foodType = new FoodType[0];
+    private int foodCount;
+
+    /**
+     * Creates a new StateEncoder for a game. The first frame is a keyframe.
+     *
+     * @param engine           the game to encode.
+     * @param keyframeInterval the number of frames from one keyframe to the next.
+     */
+    public StateEncoder(GameEngine engine, int keyframeInterval) {
+        if (keyframeInterval <= 0) {
+            throw new IllegalArgumentException("Keyframe interval must be positive: " + keyframeInterval);
+        }
+        this.engine = engine;
+        this.keyframeInterval = keyframeInterval;
+        this.originX = engine.getOccupancy().getOriginX();
+        this.originY = engine.getOccupancy().getOriginY();
+    }
+
+    /**
+     * Makes the next frame a keyframe, such as for a client that just joined.
+     */
+    public void requestKeyframe() {
+        keyframeDue = true;
+    }
+
+    /**
+     * Writes a frame for the current state of the game.
+     *
+     * @param out the buffer to write to, from its position.
+     * @return the kind of frame written, KEYFRAME or DELTA.
+     * @throws java.nio.BufferOverflowException if the frame does not fit in the buffer.
+     */
+    public byte encode(ByteBuffer out) {
+        if (keyframeDue || sinceKeyframe >= keyframeInterval || !encodeDelta(out)) {
+            encodeKeyframe(out);
+            return StateCodec.KEYFRAME;
+        }
+        sinceKeyframe++;
+        return StateCodec.DELTA;
+    }
+
+    /**
+     * Writes a keyframe and remembers the state it describes.
+     *
+     * @param out the buffer to write to.
+     */
+    private void encodeKeyframe(ByteBuffer out) {
+        int cols = engine.getWidth() / CELL_SIZE;
+        int rows = engine.getHeight() / CELL_SIZE;
+        Snake snake = engine.getSnake();
+
+        out.put(StateCodec.KEYFRAME);
+        StateCodec.putVarLong(out, engine.getTicks());
+        out.put((byte) engine.getStatus().ordinal());
+        StateCodec.putVarLong(out, engine.getPoints());
+        StateCodec.putZigZag(out, originX);
+        StateCodec.putZigZag(out, originY);
+        StateCodec.putVarLong(out, cols);
+        StateCodec.putVarLong(out, rows);
+        out.put((byte) snake.getDirection().ordinal());
+
+        // Rocks in row order, as gaps between their cells on a grid with a margin of one cell all around
+        Rock rock = engine.getRock();
+        StateCodec.putVarLong(out, rock.getCount());
+        long previous = 0;
+        for (int i = 0; i < rock.getCount(); i++) {
+            long cell = (long) (row(rock.getSortedY(i)) + 1) * (cols + 2) + column(rock.getSortedX(i)) + 1;
+            StateCodec.putVarLong(out, cell - previous);
+            previous = cell;
+        }
+
+        // The head in full, then a step code from every segment to the next, then the segments that are no step away
+        int segments = snake.getTailLength() + 1;
+        StateCodec.putVarLong(out, segments);
+        putCell(out, snake.getHead());
+        int code = 0;
+        for (int i = 1; i < segments; i++) {
+            code |= step(segment(snake, i - 1), segment(snake, i)) << ((i - 1 & 1) << 2);
+            if ((i & 1) == 0 || i == segments - 1) {
+                out.put((byte) code);
+                code = 0;
+            }
+        }
+        for (int i = 1; i < segments; i++) {
+            if (step(segment(snake, i - 1), segment(snake, i)) == StateCodec.ABSOLUTE) {
+                putCell(out, segment(snake, i));
+            }
+        }
+
+        Food foods = engine.getFoods();
+        int count = foods.size();
+        StateCodec.putVarLong(out, count);
+        if (foodCell.length < count) {
+            foodCell = new long[count];
+            foodType = new FoodType[count];
+        }
+        for (int i = 0; i < count; i++) {
+            foodCell[i] = Point.pack(foods.getX(i), foods.getY(i));
+            foodType[i] = foods.getType(i);
+            out.put((byte) foodType[i].ordinal());
+            putCell(out, foodCell[i]);
+        }
+
+        foodCount = count;
+        ticks = engine.getTicks();
+        status = engine.getStatus();
+        points = engine.getPoints();
+        head = snake.getHead();
+        length = segments;
+        sinceKeyframe = 0;
+        keyframeDue = false;
+    }
+
+    /**
+     * Writes a delta and remembers the state it leads to, unless the change is not one a delta can describe.
+     *
+     * @param out the buffer to write to.
+     * @return true if a delta was written, false if a keyframe is needed instead.
+     */
+    private boolean encodeDelta(ByteBuffer out) {
+        Snake snake = engine.getSnake();
+        Food foods = engine.getFoods();
+        int newTicks = engine.getTicks();
+        GameStatus newStatus = engine.getStatus();
+        long newHead = snake.getHead();
+        int newLength = snake.getTailLength() + 1;
+
+        boolean held = newTicks == ticks;
+        if (!held && newTicks != ticks + 1 || held && newTicks == 0 && newStatus != status) {
+            return false;
+        }
+        if (foods.size() != foodCount || newLength < length) {
+            return false;
+        }
+
+        // A moved snake took a new head and dropped its last segment; eating then added segments at the end
+        boolean moved = newHead != head;
+        if (moved && snake.getTail(0) != head) {
+            return false;
+        }
+        int kept = moved ? length - 1 : length;
+        int grown = newLength - kept - (moved ? 1 : 0);
+
+        int changedFoods = 0;
+        for (int i = 0; i < foodCount; i++) {
+            if (changed(foods, i)) {
+                changedFoods++;
+            }
+        }
+
+        int headCode = step(head, newHead);
+        int flags = headCode;
+        flags |= moved ? SHRANK : 0;
+        flags |= changedFoods > 0 ? FOODS : 0;
+        flags |= engine.getPoints() != points ? POINTS : 0;
+        flags |= grown > 0 ? GREW : 0;
+        flags |= newStatus != status ? STATUS : 0;
+        flags |= held ? HELD : 0;
+
+        out.put(StateCodec.DELTA);
+        StateCodec.putVarLong(out, flags);
+        if (headCode == StateCodec.ABSOLUTE) {
+            putCell(out, newHead);
+        }
+        if ((flags & POINTS) != 0) {
+            StateCodec.putZigZag(out, engine.getPoints() - points);
+        }
+        if ((flags & STATUS) != 0) {
+            out.put((byte) newStatus.ordinal());
+        }
+        if (grown > 0) {
+            StateCodec.putVarLong(out, grown);
+            for (int i = newLength - grown; i < newLength; i++) {
+                putCell(out, segment(snake, i));
+            }
+        }
+        if (changedFoods > 0) {
+            StateCodec.putVarLong(out, changedFoods);
+            int previous = 0;
+            for (int i = 0; i < foodCount; i++) {
+                if (!changed(foods, i)) {
+                    continue;
+                }
+                long cell = Point.pack(foods.getX(i), foods.getY(i));
+                int code = step(foodCell[i], cell);
+                StateCodec.putVarLong(out, i - previous);
+                out.put((byte) (code | foods.getType(i).ordinal() << 3));
+                if (code == StateCodec.ABSOLUTE) {
+                    putCell(out, cell);
+                }
+                foodCell[i] = cell;
+                foodType[i] = foods.getType(i);
+                previous = i;
+            }
+        }
+
+        ticks = newTicks;
+        status = newStatus;
+        points = engine.getPoints();
+        head = newHead;
+        length = newLength;
+        return true;
+    }
+
+    /**
+     * Checks if a food moved or changed type since the last frame.
+     *
+     * @param foods the foods of the game.
+     * @param i     the index of the food.
+     * @return true if the food changed.
+     */
+    private boolean changed(Food foods, int i) {
+        return foodCell[i] != Point.pack(foods.getX(i), foods.getY(i)) || foodType[i] != foods.getType(i);
+    }
+
+    /**
+     * Returns the packed coordinates of a segment, 0 being the head.
+     *
+     * @param snake the snake.
+     * @param i     the index of the segment.
+     * @return the packed coordinates.
+     */
+    private static long segment(Snake snake, int i) {
+        return i == 0 ? snake.getHead() : snake.getTail(i - 1);
+    }
+
+    /**
+     * Returns the step code between two packed positions.
+     *
+     * @param from the packed coordinates of the first position.
+     * @param to   the packed coordinates of the second position.
+     * @return the step code.
+     */
+    private int step(long from, long to) {
+        return StateCodec.step(column(Point.unpackX(from)), row(Point.unpackY(from)),
+                column(Point.unpackX(to)), row(Point.unpackY(to)));
+    }
+
+    /**
+     * Writes a packed position as the zigzag column and row of its cell.
+     *
+     * @param out    the buffer to write to.
+     * @param packed the packed coordinates.
+     */
+    private void putCell(ByteBuffer out, long packed) {
+        StateCodec.putZigZag(out, column(Point.unpackX(packed)));
+        StateCodec.putZigZag(out, row(Point.unpackY(packed)));
+    }
+
+    /**
+     * Returns the column of an x-coordinate.
+     *
+     * @param x the x-coordinate.
+     * @return the column, negative left of the map.
+     */
+    private int column(int x) {
+        return Math.floorDiv(x - originX, CELL_SIZE);
+    }
+
+    /**
+     * Returns the row of a y-coordinate.
+     *
+     * @param y the y-coordinate.
+     * @return the row, negative above the map.
+     */
+    private int row(int y) {
+        return Math.floorDiv(y - originY, CELL_SIZE);
+    }
+}
@@ -0,0 +1,11 @@
+package com.snakegame;
+
+/**
+ * The StaticBehavior keeps foods in one place.
+ */
+class StaticBehavior implements FoodBehavior {
+    @Override
+    public void update(Food food, int[] members, int count, GameEngine engine) {
+        // Static foods never move
+    }
+}
@@ -0,0 +1,15 @@
+package com.snakegame;
+
+/**
+ * A Strategy decides how to steer the snake on every tick.
+ * Strategies are used to play games without a player, for example in batch simulations.
+ */
+interface Strategy {
+    /**
+     * Decides the input for the next tick.
+     *
+     * @param engine the game to decide for.
+     * @return the direction to turn to, or null to keep going straight.
+     */
+    Direction decide(GameEngine engine);
+}
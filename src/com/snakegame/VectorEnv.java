@@ -0,0 +1,406 @@
+package com.snakegame;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The VectorEnv steps many headless games in lockstep, for training agents.
+ * Every step takes one action per game and reports a reward and whether the game ended;
+ * a game that ends is reset right away, so its observation is already the first of the next game.
+ * Game i is seeded with the seed plus i, like in a BatchSimulator.
+ *
+ * Observations live in one direct buffer, as bytes laid out game by game, then channel by channel,
+ * then row by row: the head, the rest of the body, the rocks, and the foods of every type.
+ * A byte counts what of its channel is on the cell, which is 0 or 1 but for stacked foods.
+ * Only the cells a step changed are rewritten, so stepping costs about as much as the games themselves.
+ *
+ * The games are split into contiguous slices, one for the calling thread and one for every worker thread.
+ * The workers sleep between steps and are woken without locks, so stepping allocates nothing.
+ */
+class VectorEnv implements AutoCloseable {
+    public static final int HEAD = 0;
+    public static final int BODY = 1;
+    public static final int ROCK = 2;
+    public static final int FOOD = 3;
+    public static final int CHANNELS = FOOD + FoodType.values().length;
+
+    // The action that keeps the snake going straight; the others are Direction ordinals
+    public static final int STRAIGHT = -1;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final FoodType[] TYPES = FoodType.values();
+    private static final float DEATH_REWARD = -1;
+    // The largest capacity of a ByteBuffer
+    private static final long MAX_OBSERVATION_BYTES = Integer.MAX_VALUE;
+
+    private final GameEngine[] engines;
+    private final int cols;
+    private final int rows;
+    private final int originX;
+    private final int originY;
+    private final int cells;
+    private final ByteBuffer observations;
+    private final byte[] zeros;
+    private final float[] rewards;
+    private final boolean[] dones;
+
+    // Where every food was when the observation was last written, numFoods to a game
+    private final int numFoods;
+    private final int[] foodX;
+    private final int[] foodY;
+    private final byte[] foodType;
+
+    // The worker threads, and the round they are asked to work on
+    private final Thread[] workers;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile int round;
+    private volatile boolean closed;
+    private volatile Thread caller;
+    private int[] actions;
+    private boolean resetting;
+
+    /**
+     * Creates the games and resets them.
+     *
+     * @param numEnvs the number of games.
+     * @param config  the settings of every game.
+     * @param seed    the seed of the first game.
+     * @param threads the number of threads stepping the games, including the caller's.
+     * @throws IllegalArgumentException if there are no games or no threads, or the observations of all games
+     *                                  do not fit in one ByteBuffer.
+     */
+    public VectorEnv(int numEnvs, GameConfig config, long seed, int threads) {
+        if (numEnvs <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Need at least one game and one thread: " + numEnvs + ", " + threads);
+        }
+        engines = new GameEngine[numEnvs];
+        engines[0] = new GameEngine(seed, config);
+        Occupancy occupancy = engines[0].getOccupancy();
+        cols = occupancy.getWidth() / Occupancy.CELL_SIZE;
+        rows = occupancy.getHeight() / Occupancy.CELL_SIZE;
+        originX = occupancy.getOriginX();
+        originY = occupancy.getOriginY();
+        // Every offset into the observations is an int, which holds once the whole buffer fits
+        long size = (long) numEnvs * CHANNELS * cols * rows;
+        if (size > MAX_OBSERVATION_BYTES) {
+            throw new IllegalArgumentException("Observations of " + numEnvs + " games on a " + cols + "x" + rows
+                    + " map take " + size + " bytes, more than the " + MAX_OBSERVATION_BYTES + " of one ByteBuffer");
+        }
+        cells = cols * rows;
+        for (int i = 1; i < numEnvs; i++) {
+            engines[i] = new GameEngine(seed + i, config);
+        }
+        observations = ByteBuffer.allocateDirect(numEnvs * CHANNELS * cells).order(ByteOrder.nativeOrder());
+        zeros = new byte[CHANNELS * cells];
+        rewards = new float[numEnvs];
+        dones = new boolean[numEnvs];
+
+        numFoods = engines[0].getFoods().size();
+        foodX = new int[numEnvs * numFoods];
+        foodY = new int[numEnvs * numFoods];
+        foodType = new byte[numEnvs * numFoods];
+
+        workers = new Thread[Math.min(threads, numEnvs) - 1];
+        for (int k = 0; k < workers.length; k++) {
+            int slice = k + 1;
+            workers[k] = new Thread(() -> work(slice), "vector-env-" + slice);
+            workers[k].setDaemon(true);
+            workers[k].start();
+        }
+        reset();
+    }
+
+    /**
+     * Resets every game and writes their observations.
+     */
+    public void reset() {
+        resetting = true;
+        runRound();
+    }
+
+    /**
+     * Steps every game once. Games that end are reset after their step.
+     *
+     * @param actions one action per game: a Direction ordinal, or STRAIGHT.
+     * @throws IllegalArgumentException if there is not one action per game.
+     */
+    public void step(int[] actions) {
+        if (actions.length != engines.length) {
+            throw new IllegalArgumentException("Expected " + engines.length + " actions, got " + actions.length);
+        }
+        this.actions = actions;
+        resetting = false;
+        runRound();
+    }
+
+    /**
+     * Runs the current round on every slice and waits for all of them.
+     */
+    private void runRound() {
+        if (closed) {
+            throw new IllegalStateException("Environment is closed");
+        }
+        if (workers.length == 0) {
+            runSlice(0);
+            return;
+        }
+
+        caller = Thread.currentThread();
+        pending.set(workers.length);
+        round++;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+        runSlice(0);
+        while (pending.get() != 0) {
+            LockSupport.park(this);
+        }
+    }
+
+    /**
+     * The loop of a worker thread: waits for a new round, runs its slice and tells the caller when it is the last one.
+     *
+     * @param slice the slice of games of this worker.
+     */
+    private void work(int slice) {
+        int seen = 0;
+        while (true) {
+            while (round == seen && !closed) {
+                LockSupport.park(this);
+            }
+            if (closed) {
+                return;
+            }
+            seen = round;
+            runSlice(slice);
+            if (pending.decrementAndGet() == 0) {
+                LockSupport.unpark(caller);
+            }
+        }
+    }
+
+    /**
+     * Steps or resets the games of a slice.
+     *
+     * @param slice the slice, 0 being the caller's.
+     */
+    private void runSlice(int slice) {
+        int slices = workers.length + 1;
+        int from = (int) ((long) engines.length * slice / slices);
+        int to = (int) ((long) engines.length * (slice + 1) / slices);
+        for (int i = from; i < to; i++) {
+            if (resetting) {
+                engines[i].reset();
+                rewards[i] = 0;
+                dones[i] = false;
+                writeAll(i);
+            } else {
+                stepGame(i, actions[i]);
+            }
+        }
+    }
+
+    /**
+     * Steps one game and updates its reward, done flag and observation.
+     *
+     * @param i      the index of the game.
+     * @param action a Direction ordinal, or STRAIGHT.
+     */
+    private void stepGame(int i, int action) {
+        GameEngine engine = engines[i];
+        Snake snake = engine.getSnake();
+        long headBefore = snake.getHead();
+        long tailBefore = snake.getTail(snake.getTailLength() - 1);
+        int pointsBefore = engine.getPoints();
+
+        GameStatus status = engine.step(action >= 0 && action < DIRECTIONS.length ? DIRECTIONS[action] : null);
+        rewards[i] = engine.getPoints() - pointsBefore;
+        if (status != GameStatus.RUNNING) {
+            rewards[i] += DEATH_REWARD;
+            dones[i] = true;
+            engine.reset();
+            writeAll(i);
+            return;
+        }
+        dones[i] = false;
+
+        // The old head is body now, the last segment may have left its cell, and there is a new head
+        long head = snake.getHead();
+        writeSnake(i, headBefore, head);
+        writeSnake(i, tailBefore, head);
+        writeSnake(i, head, head);
+
+        Food foods = engine.getFoods();
+        for (int k = 0, j = i * numFoods; k < numFoods; k++, j++) {
+            int x = foods.getX(k);
+            int y = foods.getY(k);
+            byte type = (byte) foods.getType(k).ordinal();
+            if (x != foodX[j] || y != foodY[j] || type != foodType[j]) {
+                add(i, FOOD + foodType[j], foodX[j], foodY[j], -1);
+                add(i, FOOD + type, x, y, 1);
+                foodX[j] = x;
+                foodY[j] = y;
+                foodType[j] = type;
+            }
+        }
+    }
+
+    /**
+     * Rewrites the whole observation of a game.
+     *
+     * @param i the index of the game.
+     */
+    private void writeAll(int i) {
+        GameEngine engine = engines[i];
+        observations.put(i * CHANNELS * cells, zeros);
+
+        Rock rock = engine.getRock();
+        for (int k = 0; k < rock.getCount(); k++) {
+            add(i, ROCK, rock.getSortedX(k), rock.getSortedY(k), 1);
+        }
+
+        Snake snake = engine.getSnake();
+        long head = snake.getHead();
+        writeSnake(i, head, head);
+        for (int k = 0; k < snake.getTailLength(); k++) {
+            writeSnake(i, snake.getTail(k), head);
+        }
+
+        Food foods = engine.getFoods();
+        for (int k = 0, j = i * numFoods; k < numFoods; k++, j++) {
+            foodX[j] = foods.getX(k);
+            foodY[j] = foods.getY(k);
+            foodType[j] = (byte) foods.getType(k).ordinal();
+            add(i, FOOD + foodType[j], foodX[j], foodY[j], 1);
+        }
+    }
+
+    /**
+     * Writes the head and body channels of one cell from the occupancy grid.
+     *
+     * @param i      the index of the game.
+     * @param cell   the packed coordinates of the cell.
+     * @param head   the packed coordinates of the head.
+     */
+    private void writeSnake(int i, long cell, long head) {
+        int index = index(i, Point.unpackX(cell), Point.unpackY(cell));
+        if (index < 0) {
+            return;
+        }
+        boolean isHead = cell == head;
+        int segments = engines[i].getOccupancy().snakeAt(Point.unpackX(cell), Point.unpackY(cell));
+        observations.put(index + HEAD * cells, (byte) (isHead ? 1 : 0));
+        observations.put(index + BODY * cells, (byte) (isHead ? segments - 1 : segments));
+    }
+
+    /**
+     * Adds to a channel of one cell.
+     *
+     * @param i       the index of the game.
+     * @param channel the channel.
+     * @param x       the x-coordinate of the cell.
+     * @param y       the y-coordinate of the cell.
+     * @param amount  what to add.
+     */
+    private void add(int i, int channel, int x, int y, int amount) {
+        int index = index(i, x, y);
+        if (index >= 0) {
+            index += channel * cells;
+            observations.put(index, (byte) (observations.get(index) + amount));
+        }
+    }
+
+    /**
+     * Returns the position of a cell in the first channel of a game.
+     *
+     * @param i the index of the game.
+     * @param x the x-coordinate of the cell.
+     * @param y the y-coordinate of the cell.
+     * @return the position in the buffer, or -1 if the cell is outside the map.
+     */
+    private int index(int i, int x, int y) {
+        int col = Math.floorDiv(x - originX, Occupancy.CELL_SIZE);
+        int row = Math.floorDiv(y - originY, Occupancy.CELL_SIZE);
+        if (col < 0 || row < 0 || col >= cols || row >= rows) {
+            return -1;
+        }
+        return i * CHANNELS * cells + row * cols + col;
+    }
+
+    /**
+     * Returns the observations of all games. The buffer is rewritten in place by every step.
+     *
+     * @return the observations.
+     */
+    public ByteBuffer getObservations() {
+        return observations;
+    }
+
+    /**
+     * Returns the reward of every game for the last step: the points scored, minus one if the game ended.
+     *
+     * @return the rewards, rewritten in place by every step.
+     */
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    /**
+     * Returns whether every game ended in the last step, and was reset.
+     *
+     * @return the done flags, rewritten in place by every step.
+     */
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    /**
+     * Returns the number of games.
+     *
+     * @return the number of games.
+     */
+    public int getNumEnvs() {
+        return engines.length;
+    }
+
+    /**
+     * Returns the number of columns of the map.
+     *
+     * @return the number of columns.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Returns the number of rows of the map.
+     *
+     * @return the number of rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns one of the games, for inspection between steps.
+     *
+     * @param i the index of the game.
+     * @return the game.
+     */
+    public GameEngine getEngine(int i) {
+        return engines[i];
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+}